@@ -2,8 +2,13 @@ package ru.mifi.financemanager;
 
 import ru.mifi.financemanager.cli.ConsoleApp;
 import ru.mifi.financemanager.config.AppConfig;
+import ru.mifi.financemanager.repository.BackgroundFlushUserRepository;
 import ru.mifi.financemanager.repository.JsonUserRepository;
+import ru.mifi.financemanager.repository.LazyJsonUserRepository;
+import ru.mifi.financemanager.repository.MappedUserRepository;
+import ru.mifi.financemanager.repository.ShardedUserRepository;
 import ru.mifi.financemanager.repository.UserRepository;
+import ru.mifi.financemanager.repository.WalUserRepository;
 import ru.mifi.financemanager.service.AuthService;
 import ru.mifi.financemanager.service.AuthServiceImpl;
 import ru.mifi.financemanager.service.FinanceService;
@@ -32,16 +37,42 @@ public class FinanceApplication {
         AppConfig config = new AppConfig();
 
         // 2. Создаём репозиторий и загружаем данные
-        UserRepository userRepository = new JsonUserRepository(config);
+        UserRepository userRepository = createRepository(config);
         userRepository.load();
 
+        // Фоновая запись: изменения сохраняются периодически, не задерживая пользователя
+        BackgroundFlushUserRepository flusher = null;
+        if (config.getFlushIntervalMillis() > 0 && !userRepository.isReadOnly()) {
+            flusher = new BackgroundFlushUserRepository(userRepository, config);
+            flusher.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(flusher::close));
+            userRepository = flusher;
+        }
+
         // 3. Создаём сервисы (Dependency Injection через конструктор)
         NotificationService notificationService = new NotificationService();
         AuthService authService = new AuthServiceImpl(userRepository);
-        FinanceService financeService = new FinanceServiceImpl(authService, notificationService);
+        FinanceService financeService =
+                new FinanceServiceImpl(authService, notificationService, userRepository);
 
         // 4. Создаём и запускаем консольное приложение
         ConsoleApp consoleApp = new ConsoleApp(authService, financeService, notificationService);
         consoleApp.run();
+
+        // Дописываем изменения, накопленные с последней фоновой записи
+        if (flusher != null) {
+            flusher.close();
+        }
+    }
+
+    /** Создаёт репозиторий в соответствии с режимом хранения из конфигурации. */
+    private static UserRepository createRepository(AppConfig config) {
+        return switch (config.getStorageMode()) {
+            case "wal" -> new WalUserRepository(config);
+            case "lazy" -> new LazyJsonUserRepository(config);
+            case "sharded" -> new ShardedUserRepository(config);
+            case "mapped" -> new MappedUserRepository(config);
+            default -> new JsonUserRepository(config);
+        };
     }
 }
@@ -9,11 +9,14 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.stream.Collectors;
+import ru.mifi.financemanager.domain.CategorySummary;
 import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionSummary;
 import ru.mifi.financemanager.domain.User;
 import ru.mifi.financemanager.exception.InvalidCredentialsException;
 import ru.mifi.financemanager.exception.ValidationException;
@@ -159,15 +162,15 @@ public class ConsoleApp {
     /** Отображает список всех пользователей. */
     private void handleListUsers() {
         System.out.println("\n--- Список пользователей ---");
-        List<User> users = authService.getAllUsers();
+        List<String> logins = authService.getAllLogins();
 
-        if (users.isEmpty()) {
+        if (logins.isEmpty()) {
             System.out.println("Пользователей нет. Зарегистрируйтесь первым!");
         } else {
-            for (User user : users) {
-                System.out.println("• " + user.getLogin());
+            for (String login : logins) {
+                System.out.println("• " + login);
             }
-            System.out.println("\nВсего пользователей: " + users.size());
+            System.out.println("\nВсего пользователей: " + logins.size());
         }
     }
 
@@ -365,11 +368,13 @@ public class ConsoleApp {
         System.out.printf("%-20s %12s %12s %12s%n", "Категория", "Бюджет", "Потрачено", "Осталось");
         System.out.println("-".repeat(60));
 
+        // Один снимок статистики на весь экран вместо пересчёта для каждой строки
+        TransactionSummary statistics = financeService.getStatistics();
+
         for (Map.Entry<String, BigDecimal> entry : budgets.entrySet()) {
             String category = entry.getKey();
             BigDecimal budget = entry.getValue();
-            BigDecimal spent =
-                    financeService.getExpensesByCategory().getOrDefault(category, BigDecimal.ZERO);
+            BigDecimal spent = expenseOf(statistics, category);
             BigDecimal remaining = budget.subtract(spent);
 
             String status = "";
@@ -398,9 +403,11 @@ public class ConsoleApp {
     private void handleShowStatistics() {
         System.out.println("\n=== ФИНАНСОВАЯ СТАТИСТИКА ===");
 
-        BigDecimal income = financeService.getTotalIncome();
-        BigDecimal expense = financeService.getTotalExpense();
-        BigDecimal balance = financeService.getBalance();
+        TransactionSummary statistics = financeService.getStatistics();
+
+        BigDecimal income = statistics.getTotalIncome();
+        BigDecimal expense = statistics.getTotalExpense();
+        BigDecimal balance = statistics.getBalance();
 
         System.out.println("-".repeat(40));
         System.out.printf("Общий доход:   %20s%n", formatMoney(income));
@@ -413,7 +420,7 @@ public class ConsoleApp {
         }
 
         // Статистика по доходам
-        Map<String, BigDecimal> incomes = financeService.getIncomesByCategory();
+        Map<String, BigDecimal> incomes = statistics.getIncomesByCategory();
         if (!incomes.isEmpty()) {
             System.out.println("\n--- Доходы по категориям ---");
             for (Map.Entry<String, BigDecimal> entry : incomes.entrySet()) {
@@ -422,7 +429,7 @@ public class ConsoleApp {
         }
 
         // Статистика по расходам
-        Map<String, BigDecimal> expenses = financeService.getExpensesByCategory();
+        Map<String, BigDecimal> expenses = statistics.getExpensesByCategory();
         if (!expenses.isEmpty()) {
             System.out.println("\n--- Расходы по категориям ---");
             for (Map.Entry<String, BigDecimal> entry : expenses.entrySet()) {
@@ -458,6 +465,7 @@ public class ConsoleApp {
             }
 
             BigDecimal total = financeService.getExpenseByCategories(categories);
+            TransactionSummary statistics = financeService.getStatistics();
 
             System.out.println("\n--- Результат ---");
             System.out.println("Категории: " + String.join(", ", categories));
@@ -465,8 +473,7 @@ public class ConsoleApp {
 
             System.out.println("\nДетализация:");
             for (String category : categories) {
-                Map<String, BigDecimal> expenses = financeService.getExpensesByCategory();
-                BigDecimal amount = expenses.getOrDefault(category, BigDecimal.ZERO);
+                BigDecimal amount = expenseOf(statistics, category);
                 System.out.printf("  %-20s %12s%n", category, formatMoney(amount));
             }
 
@@ -493,28 +500,20 @@ public class ConsoleApp {
             LocalDateTime from = fromDate.atStartOfDay();
             LocalDateTime to = toDate.atTime(LocalTime.MAX);
 
-            List<Transaction> transactions = financeService.getTransactionsByPeriod(from, to);
+            // Итоги берутся из накопленных сводок — транзакции за период не выбираются
+            TransactionSummary periodSummary = financeService.getPeriodSummary(from, to);
 
-            if (transactions.isEmpty()) {
+            if (periodSummary.isEmpty()) {
                 System.out.println("\nОпераций за указанный период не найдено.");
                 return;
             }
 
-            BigDecimal periodIncome =
-                    transactions.stream()
-                            .filter(Transaction::isIncome)
-                            .map(Transaction::getAmount)
-                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-            BigDecimal periodExpense =
-                    transactions.stream()
-                            .filter(Transaction::isExpense)
-                            .map(Transaction::getAmount)
-                            .reduce(BigDecimal.ZERO, BigDecimal::add);
+            BigDecimal periodIncome = periodSummary.getTotalIncome();
+            BigDecimal periodExpense = periodSummary.getTotalExpense();
 
             System.out.println("\n--- Результат ---");
             System.out.println("Период: " + formatDate(fromDate) + " — " + formatDate(toDate));
-            System.out.println("Операций: " + transactions.size());
+            System.out.println("Операций: " + periodSummary.getTransactionCount());
             System.out.println("Доходы: " + formatMoney(periodIncome));
             System.out.println("Расходы: " + formatMoney(periodExpense));
             System.out.println("Разница: " + formatMoney(periodIncome.subtract(periodExpense)));
@@ -531,13 +530,13 @@ public class ConsoleApp {
         System.out.println("\n--- Перевод другому пользователю ---");
 
         try {
-            List<User> users = authService.getAllUsers();
+            List<String> logins = authService.getAllLogins();
             User currentUser = authService.getCurrentUser().orElseThrow();
 
             System.out.println("Доступные получатели:");
-            for (User user : users) {
-                if (!user.getLogin().equals(currentUser.getLogin())) {
-                    System.out.println("  • " + user.getLogin());
+            for (String login : logins) {
+                if (!login.equals(currentUser.getLogin())) {
+                    System.out.println("  • " + login);
                 }
             }
 
@@ -578,8 +577,9 @@ public class ConsoleApp {
     private void handleExportCsv() {
         System.out.println("\n--- Экспорт в CSV ---");
 
-        List<Transaction> transactions = financeService.getAllTransactions();
-        if (transactions.isEmpty()) {
+        // История не копируется: транзакции читаются из кошелька по мере записи в файл
+        Iterator<Transaction> transactions = financeService.iterateTransactions();
+        if (!transactions.hasNext()) {
             System.out.println("Нет данных для экспорта.");
             return;
         }
@@ -595,10 +595,10 @@ public class ConsoleApp {
             String fileName = input.isEmpty() ? defaultName : input;
 
             CsvExporter exporter = new CsvExporter();
-            exporter.export(transactions, fileName);
+            int exported = exporter.export(transactions, fileName);
 
             System.out.println("✅ Данные экспортированы в файл: " + fileName);
-            System.out.println("   Экспортировано записей: " + transactions.size());
+            System.out.println("   Экспортировано записей: " + exported);
 
         } catch (IOException e) {
             System.out.println("❌ Ошибка при экспорте: " + e.getMessage());
@@ -609,17 +609,21 @@ public class ConsoleApp {
     private void handleImportCsv() {
         System.out.println("\n--- Импорт из CSV ---");
 
+        // Порции добавляются по мере разбора: если импорт прервётся, сообщаем, сколько уже
+        // добавлено
+        int[] applied = new int[1];
         try {
             System.out.print("Путь к файлу: ");
             String filePath = validator.validateFilePath(scanner.nextLine());
 
+            // Транзакции добавляются через сервис порциями: файл целиком в память не читается,
+            // бюджеты проверяются после каждой порции. Блоки файла разбираются параллельно
             CsvImporter importer = new CsvImporter();
-            CsvImporter.ImportResult result = importer.importFromFile(filePath);
-
-            User currentUser = authService.getCurrentUser().orElseThrow();
-            for (Transaction transaction : result.getTransactions()) {
-                currentUser.getWallet().addTransaction(transaction);
-            }
+            CsvImporter.ImportStats result =
+                    importer.importParallel(
+                            filePath,
+                            CsvImporter.DEFAULT_CHUNK_SIZE,
+                            chunk -> applied[0] += financeService.addTransactions(chunk));
 
             System.out.println("\n✅ Импорт завершён!");
             System.out.println("   Обработано строк: " + result.getTotalLines());
@@ -627,15 +631,32 @@ public class ConsoleApp {
 
             if (result.hasErrors()) {
                 System.out.println("\n⚠️ Ошибки при импорте:");
-                for (String error : result.getErrors()) {
+                for (String error : result.getErrorSamples()) {
                     System.out.println("   " + error);
                 }
+                int hidden = result.getErrorCount() - result.getErrorSamples().size();
+                if (hidden > 0) {
+                    System.out.println("   ... и ещё ошибок: " + hidden);
+                }
             }
 
         } catch (IOException e) {
             System.out.println("❌ Ошибка при чтении файла: " + e.getMessage());
+            printPartialImport(applied[0]);
         } catch (ValidationException e) {
             System.out.println("❌ " + e.getMessage());
+            printPartialImport(applied[0]);
+        }
+    }
+
+    /** Сообщает, сколько операций прерванного импорта уже добавлено в кошелёк. */
+    private void printPartialImport(int applied) {
+        if (applied > 0) {
+            System.out.println(
+                    "⚠️ Импорт прерван, но уже добавлено операций: "
+                            + applied
+                            + ". Они остались в кошельке — при повторном импорте того же файла"
+                            + " удалите их или импортируйте только оставшиеся строки.");
         }
     }
 
@@ -680,6 +701,12 @@ public class ConsoleApp {
         System.out.println("\n✅ Вы вышли из аккаунта. Данные сохранены.");
     }
 
+    /** Возвращает расходы по категории из снимка статистики (ноль, если операций не было). */
+    private BigDecimal expenseOf(TransactionSummary statistics, String category) {
+        CategorySummary summary = statistics.getCategory(category);
+        return summary != null ? summary.getExpense() : BigDecimal.ZERO;
+    }
+
     /** Форматирует денежную сумму с валютой. */
     private String formatMoney(BigDecimal amount) {
         return String.format("%,.2f ₽", amount);
@@ -36,6 +36,25 @@ public class AppConfig {
     // Версия приложения
     private String appVersion;
 
+    // Режим хранения: json (полный снимок), wal (журнал изменений + периодический снимок),
+    // lazy (индекс пользователей при старте, кошельки по требованию) или sharded (файл на шард)
+    private String storageMode;
+
+    // Число записей журнала, после которого он сжимается в полный снимок
+    private int walCompactionThreshold;
+
+    // Формат снимка: json или binary (компактный двоичный)
+    private String storageFormat;
+
+    // Число шардов в режиме sharded
+    private int shardCount;
+
+    // Интервал фоновой записи в миллисекундах (0 — запись только при выходе)
+    private long flushIntervalMillis;
+
+    // Число несохранённых изменений, при котором запись начинается раньше интервала
+    private long flushMaxDirtyCount;
+
     /**
      * Загружает конфигурацию из внешнего файла или classpath. Приоритет: внешний файл > classpath >
      * значения по умолчанию.
@@ -79,6 +98,12 @@ public class AppConfig {
         this.defaultCurrency = "RUB";
         this.appName = "Finance Manager";
         this.appVersion = "1.0.0";
+        this.storageMode = "json";
+        this.walCompactionThreshold = 1000;
+        this.shardCount = 16;
+        this.storageFormat = "json";
+        this.flushIntervalMillis = 5000;
+        this.flushMaxDirtyCount = 100;
     }
 
     /** Инициализирует поля из Properties с fallback на значения по умолчанию. */
@@ -89,6 +114,15 @@ public class AppConfig {
         this.defaultCurrency = props.getProperty("app.currency", "RUB");
         this.appName = props.getProperty("app.name", "Finance Manager");
         this.appVersion = props.getProperty("app.version", "1.0.0");
+        this.storageMode = props.getProperty("app.storage.mode", "json").trim().toLowerCase();
+        this.walCompactionThreshold =
+                Integer.parseInt(props.getProperty("app.wal.compaction.threshold", "1000").trim());
+        this.storageFormat = props.getProperty("app.storage.format", "json").trim().toLowerCase();
+        this.shardCount = Integer.parseInt(props.getProperty("app.storage.shards", "16").trim());
+        this.flushIntervalMillis =
+                Long.parseLong(props.getProperty("app.flush.interval.ms", "5000").trim());
+        this.flushMaxDirtyCount =
+                Long.parseLong(props.getProperty("app.flush.max.dirty", "100").trim());
     }
 
     /** Возвращает путь к файлу данных пользователей. */
@@ -116,6 +150,36 @@ public class AppConfig {
         return appVersion;
     }
 
+    /** Возвращает режим хранения данных (json, wal, lazy, sharded или mapped). */
+    public String getStorageMode() {
+        return storageMode;
+    }
+
+    /** Возвращает число записей журнала, после которого выполняется сжатие. */
+    public int getWalCompactionThreshold() {
+        return walCompactionThreshold;
+    }
+
+    /** Возвращает формат снимка данных (json или binary). */
+    public String getStorageFormat() {
+        return storageFormat;
+    }
+
+    /** Возвращает число шардов для режима sharded. */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /** Возвращает интервал фоновой записи в миллисекундах (0 — фоновая запись отключена). */
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    /** Возвращает число изменений, при котором фоновая запись начинается досрочно. */
+    public long getFlushMaxDirtyCount() {
+        return flushMaxDirtyCount;
+    }
+
     /** Возвращает порог предупреждения как BigDecimal (для сравнения с процентами). */
     public BigDecimal getBudgetWarningThresholdAsBigDecimal() {
         return BigDecimal.valueOf(budgetWarningThreshold);
@@ -124,7 +188,7 @@ public class AppConfig {
     @Override
     public String toString() {
         return String.format(
-                "AppConfig{dataFile='%s', warningThreshold=%.1f%%, currency='%s'}",
-                dataFilePath, budgetWarningThreshold, defaultCurrency);
+                "AppConfig{dataFile='%s', warningThreshold=%.1f%%, currency='%s', storage='%s'}",
+                dataFilePath, budgetWarningThreshold, defaultCurrency, storageMode);
     }
 }
@@ -0,0 +1,83 @@
+package ru.mifi.financemanager.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * Сводка по одной категории: суммы доходов и расходов и количество операций.
+ *
+ * <p>Изменяется только внутри пакета domain (при накоплении статистики). Наружу сводки отдаются
+ * копиями, поэтому для вызывающего кода объект фактически неизменяем.
+ */
+public class CategorySummary {
+
+    private final String name;
+
+    private BigDecimal income;
+
+    private BigDecimal expense;
+
+    private int transactionCount;
+
+    /** Создаёт пустую сводку для категории. */
+    public CategorySummary(String name) {
+        this(name, BigDecimal.ZERO, BigDecimal.ZERO, 0);
+    }
+
+    /** Создаёт сводку с заданными значениями. */
+    public CategorySummary(
+            String name, BigDecimal income, BigDecimal expense, int transactionCount) {
+        this.name = name;
+        this.income = income;
+        this.expense = expense;
+        this.transactionCount = transactionCount;
+    }
+
+    /** Учитывает транзакцию в сводке. */
+    void add(Transaction transaction) {
+        if (transaction.isIncome()) {
+            income = income.add(transaction.getAmount());
+        } else if (transaction.isExpense()) {
+            expense = expense.add(transaction.getAmount());
+        }
+        transactionCount++;
+    }
+
+    /** Прибавляет к сводке значения другой сводки той же категории. */
+    void merge(CategorySummary other) {
+        income = income.add(other.income);
+        expense = expense.add(other.expense);
+        transactionCount += other.transactionCount;
+    }
+
+    /** Возвращает независимую копию сводки. */
+    CategorySummary copy() {
+        return new CategorySummary(name, income, expense, transactionCount);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BigDecimal getIncome() {
+        return income;
+    }
+
+    public BigDecimal getExpense() {
+        return expense;
+    }
+
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    /** Вычисляет разницу доходов и расходов по категории. */
+    public BigDecimal getBalance() {
+        return income.subtract(expense);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s: +%.2f / -%.2f (%d операций)", name, income, expense, transactionCount);
+    }
+}
@@ -0,0 +1,142 @@
+package ru.mifi.financemanager.domain;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Снимок статистики по набору транзакций: общие суммы и разбивка по категориям.
+ *
+ * <p>Строится за один проход по транзакциям ({@link #of(Iterable)}) либо напрямую из индексов
+ * кошелька ({@link Wallet#getSummary()}). Категории сравниваются без учёта регистра — так же, как в
+ * {@link Wallet}.
+ */
+public class TransactionSummary {
+
+    private BigDecimal totalIncome;
+
+    private BigDecimal totalExpense;
+
+    private int transactionCount;
+
+    // Категории: название в нижнем регистре -> сводка
+    private final Map<String, CategorySummary> categories;
+
+    /** Создаёт пустую сводку. */
+    public TransactionSummary() {
+        this.totalIncome = BigDecimal.ZERO;
+        this.totalExpense = BigDecimal.ZERO;
+        this.transactionCount = 0;
+        this.categories = new HashMap<>();
+    }
+
+    /** Группирует транзакции по категориям за один проход. */
+    public static TransactionSummary of(Iterable<Transaction> transactions) {
+        TransactionSummary summary = new TransactionSummary();
+        for (Transaction transaction : transactions) {
+            summary.add(transaction);
+        }
+        return summary;
+    }
+
+    /** Учитывает транзакцию в общих суммах и в сводке её категории. */
+    void add(Transaction transaction) {
+        if (transaction.isIncome()) {
+            totalIncome = totalIncome.add(transaction.getAmount());
+        } else if (transaction.isExpense()) {
+            totalExpense = totalExpense.add(transaction.getAmount());
+        }
+        transactionCount++;
+
+        categories
+                .computeIfAbsent(
+                        transaction.getCategory().toLowerCase(),
+                        key -> new CategorySummary(transaction.getCategory()))
+                .add(transaction);
+    }
+
+    /** Добавляет готовую сводку категории (используется при построении из индексов). */
+    void addCategory(CategorySummary category) {
+        totalIncome = totalIncome.add(category.getIncome());
+        totalExpense = totalExpense.add(category.getExpense());
+        transactionCount += category.getTransactionCount();
+
+        CategorySummary existing = categories.get(category.getName().toLowerCase());
+        if (existing == null) {
+            categories.put(category.getName().toLowerCase(), category.copy());
+        } else {
+            existing.merge(category);
+        }
+    }
+
+    /** Прибавляет к сводке другую сводку. */
+    void merge(TransactionSummary other) {
+        for (CategorySummary category : other.categories.values()) {
+            addCategory(category);
+        }
+    }
+
+    public BigDecimal getTotalIncome() {
+        return totalIncome;
+    }
+
+    public BigDecimal getTotalExpense() {
+        return totalExpense;
+    }
+
+    /** Вычисляет разницу доходов и расходов. */
+    public BigDecimal getBalance() {
+        return totalIncome.subtract(totalExpense);
+    }
+
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    /** Проверяет, что в сводке нет ни одной операции. */
+    public boolean isEmpty() {
+        return transactionCount == 0;
+    }
+
+    /** Возвращает сводку по категории без учёта регистра или null, если операций не было. */
+    public CategorySummary getCategory(String category) {
+        CategorySummary summary = categories.get(category.toLowerCase());
+        return summary != null ? summary.copy() : null;
+    }
+
+    /** Возвращает сводки всех категорий, отсортированные по названию. */
+    public List<CategorySummary> getCategories() {
+        List<CategorySummary> result = new ArrayList<>(categories.size());
+        for (CategorySummary summary : categories.values()) {
+            result.add(summary.copy());
+        }
+        result.sort(Comparator.comparing(CategorySummary::getName));
+        return result;
+    }
+
+    /** Возвращает расходы по категориям (только категории с ненулевыми расходами). */
+    public Map<String, BigDecimal> getExpensesByCategory() {
+        Map<String, BigDecimal> result = new LinkedHashMap<>();
+        for (CategorySummary summary : getCategories()) {
+            if (summary.getExpense().compareTo(BigDecimal.ZERO) > 0) {
+                result.put(summary.getName(), summary.getExpense());
+            }
+        }
+        return result;
+    }
+
+    /** Возвращает доходы по категориям (только категории с ненулевыми доходами). */
+    public Map<String, BigDecimal> getIncomesByCategory() {
+        Map<String, BigDecimal> result = new LinkedHashMap<>();
+        for (CategorySummary summary : getCategories()) {
+            if (summary.getIncome().compareTo(BigDecimal.ZERO) > 0) {
+                result.put(summary.getName(), summary.getIncome());
+            }
+        }
+        return result;
+    }
+}
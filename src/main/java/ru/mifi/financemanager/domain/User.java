@@ -47,6 +47,11 @@ public class User {
         return wallet;
     }
 
+    /** Проверяет, есть ли у пользователя несохранённые изменения. */
+    public boolean isDirty() {
+        return wallet.isDirty();
+    }
+
     /** Проверяет соответствие введённого пароля. */
     public boolean checkPassword(String inputPassword) {
         return this.password.equals(inputPassword);
@@ -1,11 +1,23 @@
 package ru.mifi.financemanager.domain;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -17,148 +29,699 @@ import java.util.stream.Collectors;
  *   <li>Список всех транзакций (доходы и расходы)
  *   <li>Карту категорий с установленными бюджетами
  * </ul>
+ *
+ * <p>Суммы доходов и расходов поддерживаются инкрементально при добавлении транзакций, поэтому
+ * баланс читается за O(1). Агрегаты не сериализуются — после загрузки из хранилища их нужно
+ * восстановить через {@link #recalculateAggregates()}.
+ *
+ * <p>Для категорий ведётся регистронезависимый индекс: суммы доходов/расходов и позиции транзакций
+ * в общем списке. Запросы по категории и проверка бюджета не требуют полного прохода по истории.
+ *
+ * <p>Для запросов за период ведётся индекс по времени создания (TreeMap): выборка — это бинарный
+ * поиск границы и последовательный проход только по попавшим в период транзакциям. Транзакции с
+ * историческими датами (например, из CSV) попадают в индекс на своё место по времени.
+ *
+ * <p>Дополнительно поддерживаются дневные и месячные сводки (с разбивкой по категориям). Итоги за
+ * период собираются из них, а к отдельным транзакциям обращаемся только для неполных дней на
+ * границах периода.
+ *
+ * <p>Кошелёк потокобезопасен: изменения выполняются под блокировкой записи кошелька (у каждого
+ * кошелька своя). Общие суммы и баланс, бюджеты и список категорий публикуются неизменяемыми
+ * объектами и читаются без блокировок. Остальные запросы (транзакции, выборки за период, суммы по
+ * категориям) идут по изменяемым индексам под блокировкой чтения и возвращают копии, согласованные
+ * с одним моментом: такой запрос ждёт окончания текущего изменения кошелька, а изменение ждёт
+ * окончания запросов. Изменение занимает O(log n), а длинные выборки копируют только попавшие в них
+ * транзакции, поэтому ожидание короткое, но оно есть. Слушатель изменений вызывается под
+ * блокировкой записи, поэтому видит изменения в порядке их применения.
  */
 public class Wallet {
 
+    // Сколько транзакций обход копирует за одну блокировку
+    private static final int CURSOR_PAGE_SIZE = 1024;
+
     // Список всех транзакций пользователя
     private final List<Transaction> transactions;
 
     // Бюджеты по категориям: название категории -> лимит
     private final Map<String, BigDecimal> categoryBudgets;
 
+    // Накопленные суммы доходов и расходов (transient — не попадают в JSON)
+    private transient volatile Totals totals;
+
+    // Неизменяемая копия бюджетов для чтения без блокировки
+    private transient volatile Map<String, BigDecimal> budgetsView;
+
+    // Неизменяемый упорядоченный список названий категорий для чтения без блокировки
+    private transient volatile List<String> categoryNames;
+
+    // Индекс категорий: название в нижнем регистре -> суммы и позиции транзакций
+    private transient Map<String, CategoryIndexEntry> categoryIndex;
+
+    // Индекс по времени: момент создания -> транзакции с этим моментом
+    private transient NavigableMap<LocalDateTime, List<Transaction>> timeIndex;
+
+    // Сводки по дням
+    private transient NavigableMap<LocalDate, TransactionSummary> dailyRollups;
+
+    // Сводки по месяцам
+    private transient NavigableMap<YearMonth, TransactionSummary> monthlyRollups;
+
+    // Слушатель изменений (подключается репозиторием, в JSON не сохраняется)
+    private transient volatile WalletListener listener;
+
+    // Счётчик изменений кошелька (растёт при каждой транзакции и изменении бюджета)
+    private transient volatile long version;
+
+    // Значение счётчика, сохранённое репозиторием последним
+    private transient volatile long savedVersion;
+
+    // Блокировка кошелька: запись — изменения, чтение — запросы по индексам
+    private final transient ReentrantReadWriteLock lock;
+
+    /** Общие суммы доходов и расходов; заменяются целиком, чтобы баланс читался согласованно. */
+    private static final class Totals {
+        private static final Totals ZERO = new Totals(BigDecimal.ZERO, BigDecimal.ZERO);
+
+        private final BigDecimal income;
+        private final BigDecimal expense;
+
+        private Totals(BigDecimal income, BigDecimal expense) {
+            this.income = income;
+            this.expense = expense;
+        }
+
+        private Totals plus(Transaction transaction) {
+            if (transaction.isIncome()) {
+                return new Totals(income.add(transaction.getAmount()), expense);
+            }
+            if (transaction.isExpense()) {
+                return new Totals(income, expense.add(transaction.getAmount()));
+            }
+            return this;
+        }
+    }
+
+    /** Согласованный снимок содержимого кошелька для сохранения. */
+    public static final class Snapshot {
+        private final List<Transaction> transactions;
+        private final Map<String, BigDecimal> categoryBudgets;
+        private final long version;
+
+        private Snapshot(
+                List<Transaction> transactions,
+                Map<String, BigDecimal> categoryBudgets,
+                long version) {
+            this.transactions = transactions;
+            this.categoryBudgets = categoryBudgets;
+            this.version = version;
+        }
+
+        public List<Transaction> getTransactions() {
+            return transactions;
+        }
+
+        public Map<String, BigDecimal> getCategoryBudgets() {
+            return categoryBudgets;
+        }
+
+        /** Возвращает счётчик изменений кошелька на момент снимка. */
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    /** Запись индекса категории. */
+    private static class CategoryIndexEntry {
+        // Название берётся из первой транзакции категории
+        private final CategorySummary summary;
+        private final List<Integer> positions = new ArrayList<>();
+        // Написания названия, встречавшиеся в транзакциях категории
+        private final Set<String> names = new HashSet<>();
+
+        private CategoryIndexEntry(String name) {
+            this.summary = new CategorySummary(name);
+        }
+    }
+
     /** Создаёт пустой кошелёк. */
     public Wallet() {
         this.transactions = new ArrayList<>();
         this.categoryBudgets = new HashMap<>();
+        this.totals = Totals.ZERO;
+        this.budgetsView = Map.of();
+        this.categoryNames = List.of();
+        this.lock = new ReentrantReadWriteLock();
+        this.categoryIndex = new HashMap<>();
+        this.timeIndex = new TreeMap<>();
+        this.dailyRollups = new TreeMap<>();
+        this.monthlyRollups = new TreeMap<>();
     }
 
     /** Добавляет транзакцию в кошелёк. */
     public void addTransaction(Transaction transaction) {
+        lock.writeLock().lock();
+        try {
+            append(transaction);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Добавляет группу транзакций одним шагом (под одной блокировкой записи). */
+    public void addTransactions(List<Transaction> batch) {
+        lock.writeLock().lock();
+        try {
+            for (Transaction transaction : batch) {
+                append(transaction);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет группу расходов одним шагом, если их общая сумма не превышает баланс.
+     *
+     * @return false, если средств недостаточно (кошелёк не изменён)
+     */
+    public boolean withdraw(List<Transaction> expenses) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Transaction expense : expenses) {
+            total = total.add(expense.getAmount());
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (getBalance().compareTo(total) < 0) {
+                return false;
+            }
+            for (Transaction expense : expenses) {
+                append(expense);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Добавляет транзакцию и уведомляет слушателя (вызывается под блокировкой записи). */
+    private void append(Transaction transaction) {
         transactions.add(transaction);
+        if (applyToAggregates(transaction, transactions.size() - 1)) {
+            publishCategoryNames();
+        }
+        version++;
+
+        WalletListener current = listener;
+        if (current != null) {
+            current.onTransactionAdded(transaction);
+        }
+    }
+
+    /**
+     * Атомарно списывает {@code expense} с кошелька отправителя и зачисляет {@code income} в
+     * кошелёк получателя.
+     *
+     * <p>Баланс отправителя проверяется под блокировками обоих кошельков, поэтому параллельные
+     * переводы не уводят его в минус. Блокировки берутся в порядке {@code senderLocksFirst}:
+     * вызывающий должен задавать его одинаково для любой пары кошельков (например, по логинам),
+     * тогда встречные переводы не блокируют друг друга навсегда.
+     *
+     * @return false, если средств недостаточно (кошельки не изменены)
+     */
+    public static boolean transfer(
+            Wallet sender,
+            Transaction expense,
+            Wallet receiver,
+            Transaction income,
+            boolean senderLocksFirst) {
+        if (sender == receiver) {
+            throw new IllegalArgumentException("Перевод внутри одного кошелька");
+        }
+
+        Wallet first = senderLocksFirst ? sender : receiver;
+        Wallet second = senderLocksFirst ? receiver : sender;
+        first.lock.writeLock().lock();
+        try {
+            second.lock.writeLock().lock();
+            try {
+                if (sender.getBalance().compareTo(expense.getAmount()) < 0) {
+                    return false;
+                }
+                sender.addTransaction(expense);
+                receiver.addTransaction(income);
+                return true;
+            } finally {
+                second.lock.writeLock().unlock();
+            }
+        } finally {
+            first.lock.writeLock().unlock();
+        }
+    }
+
+    /** Подключает слушателя изменений кошелька (null — отключить). */
+    public void setListener(WalletListener listener) {
+        this.listener = listener;
+    }
+
+    /** Возвращает счётчик изменений кошелька. */
+    public long getVersion() {
+        return version;
+    }
+
+    /** Возвращает число изменений, ещё не сохранённых репозиторием. */
+    public long getUnsavedChangeCount() {
+        return version - savedVersion;
+    }
+
+    /** Проверяет, есть ли изменения, ещё не сохранённые репозиторием. */
+    public boolean isDirty() {
+        return version != savedVersion;
+    }
+
+    /**
+     * Отмечает кошелёк сохранённым в состоянии {@code version}.
+     *
+     * <p>Репозиторий запоминает версию до сериализации: изменения, сделанные во время записи, не
+     * потеряются и попадут в следующее сохранение.
+     */
+    public void markSaved(long version) {
+        this.savedVersion = version;
+    }
+
+    /** Возвращает транзакции, бюджеты и счётчик изменений, согласованные с одним моментом. */
+    public Snapshot snapshot() {
+        return read(
+                () ->
+                        new Snapshot(
+                                new ArrayList<>(transactions),
+                                new HashMap<>(categoryBudgets),
+                                version));
+    }
+
+    /**
+     * Учитывает транзакцию в накопленных суммах и индексе категорий.
+     *
+     * @return true, если встретилось новое написание названия категории
+     */
+    private boolean applyToAggregates(Transaction transaction, int position) {
+        CategoryIndexEntry entry =
+                categoryIndex.computeIfAbsent(
+                        categoryKey(transaction.getCategory()),
+                        key -> new CategoryIndexEntry(transaction.getCategory()));
+        entry.positions.add(position);
+        entry.summary.add(transaction);
+        boolean newName = entry.names.add(transaction.getCategory());
+
+        timeIndex
+                .computeIfAbsent(transaction.getCreatedAt(), key -> new ArrayList<>(1))
+                .add(transaction);
+
+        LocalDate day = transaction.getCreatedAt().toLocalDate();
+        dailyRollups.computeIfAbsent(day, key -> new TransactionSummary()).add(transaction);
+        monthlyRollups
+                .computeIfAbsent(YearMonth.from(day), key -> new TransactionSummary())
+                .add(transaction);
+
+        totals = totals.plus(transaction);
+        return newName;
+    }
+
+    /** Публикует список названий категорий (вызывается под блокировкой записи). */
+    private void publishCategoryNames() {
+        categoryNames =
+                categoryIndex.values().stream()
+                        .flatMap(entry -> entry.names.stream())
+                        .sorted()
+                        .collect(Collectors.toUnmodifiableList());
+    }
+
+    /** Публикует копию бюджетов (вызывается под блокировкой записи). */
+    private void publishBudgets() {
+        budgetsView = Collections.unmodifiableMap(new HashMap<>(categoryBudgets));
+    }
+
+    /** Нормализует название категории для регистронезависимого поиска. */
+    private static String categoryKey(String category) {
+        return category.toLowerCase();
+    }
+
+    /** Выполняет запрос под блокировкой чтения. */
+    private <T> T read(Supplier<T> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Пересчитывает агрегаты по списку транзакций.
+     *
+     * <p>Вызывается репозиторием после десериализации: Gson заполняет список транзакций напрямую,
+     * минуя {@link #addTransaction(Transaction)}.
+     */
+    public void recalculateAggregates() {
+        lock.writeLock().lock();
+        try {
+            totals = Totals.ZERO;
+            categoryIndex = new HashMap<>();
+            timeIndex = new TreeMap<>();
+            dailyRollups = new TreeMap<>();
+            monthlyRollups = new TreeMap<>();
+            for (int i = 0; i < transactions.size(); i++) {
+                applyToAggregates(transactions.get(i), i);
+            }
+            publishCategoryNames();
+            publishBudgets();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /** Возвращает все транзакции. */
     public List<Transaction> getTransactions() {
-        return new ArrayList<>(transactions);
+        return read(() -> new ArrayList<>(transactions));
+    }
+
+    /**
+     * Обходит транзакции по порядку, не копируя историю целиком.
+     *
+     * <p>Транзакции читаются страницами под блокировкой чтения, между страницами блокировка
+     * отпускается. Список транзакций только пополняется, поэтому обход видит ровно те транзакции,
+     * что были в кошельке при его начале; добавленные позже в него не попадают.
+     */
+    public Iterator<Transaction> iterateTransactions() {
+        int size = read(transactions::size);
+        return new Iterator<>() {
+            private final Transaction[] page = new Transaction[Math.min(size, CURSOR_PAGE_SIZE)];
+            private int pageStart;
+            private int pageLength;
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                return position < size;
+            }
+
+            @Override
+            public Transaction next() {
+                if (position >= size) {
+                    throw new NoSuchElementException();
+                }
+                if (position == pageStart + pageLength) {
+                    pageStart = position;
+                    pageLength = Math.min(page.length, size - position);
+                    read(
+                            () -> {
+                                for (int i = 0; i < pageLength; i++) {
+                                    page[i] = transactions.get(pageStart + i);
+                                }
+                                return null;
+                            });
+                }
+                return page[position++ - pageStart];
+            }
+        };
     }
 
-    /** Возвращает транзакции за указанный период. */
+    /** Возвращает транзакции за указанный период (границы включительно) в порядке времени. */
     public List<Transaction> getTransactionsByPeriod(LocalDateTime from, LocalDateTime to) {
-        return transactions.stream()
-                .filter(t -> !t.getCreatedAt().isBefore(from) && !t.getCreatedAt().isAfter(to))
-                .collect(Collectors.toList());
+        List<Transaction> result = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return result;
+        }
+
+        return read(
+                () -> {
+                    for (List<Transaction> sameMoment :
+                            timeIndex.subMap(from, true, to, true).values()) {
+                        result.addAll(sameMoment);
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Возвращает сводку за период (границы включительно).
+     *
+     * <p>Полные месяцы берутся из месячных сводок, полные дни вне них — из дневных. Отдельные
+     * транзакции просматриваются только для неполных дней в начале и в конце периода.
+     */
+    public TransactionSummary getSummaryByPeriod(LocalDateTime from, LocalDateTime to) {
+        TransactionSummary summary = new TransactionSummary();
+        if (from.isAfter(to)) {
+            return summary;
+        }
+
+        // Первый и последний дни, целиком попадающие в период
+        LocalDate firstFullDay =
+                from.toLocalTime().equals(LocalTime.MIDNIGHT)
+                        ? from.toLocalDate()
+                        : from.toLocalDate().plusDays(1);
+        LocalDate lastFullDay =
+                to.toLocalTime().equals(LocalTime.MAX)
+                        ? to.toLocalDate()
+                        : to.toLocalDate().minusDays(1);
+
+        return read(
+                () -> {
+                    if (firstFullDay.isAfter(lastFullDay)) {
+                        addRawRange(summary, from, true, to);
+                        return summary;
+                    }
+
+                    addRawRange(summary, from, false, firstFullDay.atStartOfDay());
+                    addFullDays(summary, firstFullDay, lastFullDay);
+                    addRawRange(summary, lastFullDay.plusDays(1).atStartOfDay(), true, to);
+                    return summary;
+                });
+    }
+
+    /** Учитывает транзакции из индекса времени в диапазоне [from, to] или [from, to). */
+    private void addRawRange(
+            TransactionSummary summary, LocalDateTime from, boolean toInclusive, LocalDateTime to) {
+        if (from.isAfter(to)) {
+            return;
+        }
+        for (List<Transaction> sameMoment :
+                timeIndex.subMap(from, true, to, toInclusive).values()) {
+            for (Transaction transaction : sameMoment) {
+                summary.add(transaction);
+            }
+        }
+    }
+
+    /** Учитывает полные дни [firstDay, lastDay] через месячные и дневные сводки. */
+    private void addFullDays(TransactionSummary summary, LocalDate firstDay, LocalDate lastDay) {
+        YearMonth firstMonth = YearMonth.from(firstDay);
+        if (firstDay.getDayOfMonth() != 1) {
+            firstMonth = firstMonth.plusMonths(1);
+        }
+        YearMonth lastMonth = YearMonth.from(lastDay);
+        if (!lastDay.equals(lastMonth.atEndOfMonth())) {
+            lastMonth = lastMonth.minusMonths(1);
+        }
+
+        if (firstMonth.isAfter(lastMonth)) {
+            addDailyRollups(summary, firstDay, lastDay);
+            return;
+        }
+
+        addDailyRollups(summary, firstDay, firstMonth.atDay(1).minusDays(1));
+        for (TransactionSummary month :
+                monthlyRollups.subMap(firstMonth, true, lastMonth, true).values()) {
+            summary.merge(month);
+        }
+        addDailyRollups(summary, lastMonth.atEndOfMonth().plusDays(1), lastDay);
+    }
+
+    /** Учитывает дневные сводки за [firstDay, lastDay]. */
+    private void addDailyRollups(
+            TransactionSummary summary, LocalDate firstDay, LocalDate lastDay) {
+        if (firstDay.isAfter(lastDay)) {
+            return;
+        }
+        for (TransactionSummary day : dailyRollups.subMap(firstDay, true, lastDay, true).values()) {
+            summary.merge(day);
+        }
     }
 
     /** Возвращает транзакции по указанной категории. */
     public List<Transaction> getTransactionsByCategory(String category) {
-        return transactions.stream()
-                .filter(t -> t.getCategory().equalsIgnoreCase(category))
-                .collect(Collectors.toList());
+        return read(
+                () -> {
+                    CategoryIndexEntry entry = categoryIndex.get(categoryKey(category));
+                    if (entry == null) {
+                        return new ArrayList<>();
+                    }
+
+                    List<Transaction> result = new ArrayList<>(entry.positions.size());
+                    for (int position : entry.positions) {
+                        result.add(transactions.get(position));
+                    }
+                    return result;
+                });
     }
 
-    /** Вычисляет общую сумму доходов. */
+    /** Возвращает общую сумму доходов. */
     public BigDecimal getTotalIncome() {
-        return transactions.stream()
-                .filter(Transaction::isIncome)
-                .map(Transaction::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return totals.income;
     }
 
-    /** Вычисляет общую сумму расходов. */
+    /** Возвращает общую сумму расходов. */
     public BigDecimal getTotalExpense() {
-        return transactions.stream()
-                .filter(Transaction::isExpense)
-                .map(Transaction::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return totals.expense;
     }
 
     /** Вычисляет текущий баланс (доходы минус расходы). */
     public BigDecimal getBalance() {
-        return getTotalIncome().subtract(getTotalExpense());
+        Totals current = totals;
+        return current.income.subtract(current.expense);
     }
 
     /** Вычисляет сумму расходов по указанной категории. */
     public BigDecimal getExpenseByCategory(String category) {
-        return transactions.stream()
-                .filter(Transaction::isExpense)
-                .filter(t -> t.getCategory().equalsIgnoreCase(category))
-                .map(Transaction::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return read(() -> expenseByCategory(category));
     }
 
     /** Вычисляет сумму доходов по указанной категории. */
     public BigDecimal getIncomeByCategory(String category) {
-        return transactions.stream()
-                .filter(Transaction::isIncome)
-                .filter(t -> t.getCategory().equalsIgnoreCase(category))
-                .map(Transaction::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return read(
+                () -> {
+                    CategoryIndexEntry entry = categoryIndex.get(categoryKey(category));
+                    return entry != null ? entry.summary.getIncome() : BigDecimal.ZERO;
+                });
+    }
+
+    /** Сумма расходов по категории (вызывается под блокировкой чтения). */
+    private BigDecimal expenseByCategory(String category) {
+        CategoryIndexEntry entry = categoryIndex.get(categoryKey(category));
+        return entry != null ? entry.summary.getExpense() : BigDecimal.ZERO;
     }
 
     /** Вычисляет сумму расходов по нескольким категориям. */
     public BigDecimal getExpenseByCategories(List<String> categories) {
-        List<String> lowerCategories =
-                categories.stream().map(String::toLowerCase).collect(Collectors.toList());
+        // Дубликаты в запросе (в т.ч. с разным регистром) учитываем один раз
+        Set<String> keys = new HashSet<>();
+        for (String category : categories) {
+            keys.add(categoryKey(category));
+        }
 
-        return transactions.stream()
-                .filter(Transaction::isExpense)
-                .filter(t -> lowerCategories.contains(t.getCategory().toLowerCase()))
-                .map(Transaction::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return read(
+                () -> {
+                    BigDecimal total = BigDecimal.ZERO;
+                    for (String key : keys) {
+                        CategoryIndexEntry entry = categoryIndex.get(key);
+                        if (entry != null) {
+                            total = total.add(entry.summary.getExpense());
+                        }
+                    }
+                    return total;
+                });
+    }
+
+    /**
+     * Возвращает снимок статистики по всему кошельку.
+     *
+     * <p>Строится из индекса категорий, без прохода по транзакциям: O(k), где k — число категорий.
+     */
+    public TransactionSummary getSummary() {
+        return read(
+                () -> {
+                    TransactionSummary summary = new TransactionSummary();
+                    for (CategoryIndexEntry entry : categoryIndex.values()) {
+                        summary.addCategory(entry.summary);
+                    }
+                    return summary;
+                });
     }
 
     /** Устанавливает бюджет для категории. */
     public void setBudget(String category, BigDecimal limit) {
-        categoryBudgets.put(category, limit);
+        lock.writeLock().lock();
+        try {
+            categoryBudgets.put(category, limit);
+            publishBudgets();
+            version++;
+
+            WalletListener current = listener;
+            if (current != null) {
+                current.onBudgetChanged(category, limit);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /** Удаляет бюджет для категории. */
     public void removeBudget(String category) {
-        categoryBudgets.remove(category);
+        lock.writeLock().lock();
+        try {
+            if (categoryBudgets.remove(category) == null) {
+                return;
+            }
+            publishBudgets();
+            version++;
+
+            WalletListener current = listener;
+            if (current != null) {
+                current.onBudgetChanged(category, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /** Возвращает все установленные бюджеты. */
     public Map<String, BigDecimal> getCategoryBudgets() {
-        return new HashMap<>(categoryBudgets);
+        return new HashMap<>(budgetsView);
     }
 
     /** Возвращает бюджет для указанной категории. */
     public BigDecimal getBudget(String category) {
-        return categoryBudgets.get(category);
+        return budgetsView.get(category);
     }
 
     /** Вычисляет оставшийся бюджет по категории. */
     public BigDecimal getRemainingBudget(String category) {
-        BigDecimal budget = categoryBudgets.get(category);
-        if (budget == null) {
-            return BigDecimal.ZERO;
-        }
-        BigDecimal spent = getExpenseByCategory(category);
-        return budget.subtract(spent);
+        return read(
+                () -> {
+                    BigDecimal budget = categoryBudgets.get(category);
+                    if (budget == null) {
+                        return BigDecimal.ZERO;
+                    }
+                    return budget.subtract(expenseByCategory(category));
+                });
     }
 
     /** Вычисляет процент использования бюджета по категории. */
     public double getBudgetUsagePercent(String category) {
-        BigDecimal budget = categoryBudgets.get(category);
-        if (budget == null || budget.compareTo(BigDecimal.ZERO) == 0) {
-            return -1;
-        }
-        BigDecimal spent = getExpenseByCategory(category);
-        // Используем doubleValue() только для вычисления процента (не для денег)
-        return spent.doubleValue() / budget.doubleValue() * 100;
+        return read(
+                () -> {
+                    BigDecimal budget = categoryBudgets.get(category);
+                    if (budget == null || budget.compareTo(BigDecimal.ZERO) == 0) {
+                        return -1.0;
+                    }
+                    BigDecimal spent = expenseByCategory(category);
+                    // Используем doubleValue() только для вычисления процента (не для денег)
+                    return spent.doubleValue() / budget.doubleValue() * 100;
+                });
     }
 
-    /** Возвращает список всех уникальных категорий из транзакций. */
+    /**
+     * Возвращает список всех уникальных категорий из транзакций.
+     *
+     * <p>Названия возвращаются в том написании, в каком они встречаются в транзакциях: категории,
+     * отличающиеся только регистром, перечисляются по отдельности.
+     */
     public List<String> getAllCategories() {
-        return transactions.stream()
-                .map(Transaction::getCategory)
-                .distinct()
-                .sorted()
-                .collect(Collectors.toList());
+        return new ArrayList<>(categoryNames);
     }
 
     /** Возвращает список категорий с установленными бюджетами. */
     public List<String> getCategoriesWithBudget() {
-        return new ArrayList<>(categoryBudgets.keySet());
+        return new ArrayList<>(budgetsView.keySet());
     }
 }
@@ -0,0 +1,21 @@
+package ru.mifi.financemanager.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * Слушатель изменений кошелька.
+ *
+ * <p>Позволяет слою хранения узнавать о каждом изменении (например, чтобы дописать его в журнал),
+ * не связывая доменную модель с конкретным репозиторием.
+ *
+ * <p>Методы вызываются под блокировкой записи кошелька. Слушатель не должен ждать блокировок,
+ * которые кто-то удерживает, читая кошельки (например, при записи снимка).
+ */
+public interface WalletListener {
+
+    /** Вызывается после добавления транзакции в кошелёк. */
+    void onTransactionAdded(Transaction transaction);
+
+    /** Вызывается после изменения бюджета; limit равен null, если бюджет удалён. */
+    void onBudgetChanged(String category, BigDecimal limit);
+}
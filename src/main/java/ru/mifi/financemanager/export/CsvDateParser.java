@@ -0,0 +1,178 @@
+package ru.mifi.financemanager.export;
+
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Разбор дат импорта с запоминанием формата файла.
+ *
+ * <p>Известные форматы читаются из байтов поля вручную, по фиксированным позициям, без исключений.
+ * Формат, подошедший последним, пробуется первым, так что после первых записей каждая дата
+ * разбирается с одной попытки. Форматтеры {@link DateTimeFormatter} используются только для того,
+ * что вручную не разобрано: там исключение означает действительно неверную дату.
+ *
+ * <p>Экземпляр создаётся на один файл и может использоваться блоками, разбираемыми параллельно:
+ * запомненный формат — лишь подсказка, и гонка за ним на результат не влияет.
+ */
+final class CsvDateParser {
+
+    // Основной формат, ISO и формат без секунд — в порядке попыток
+    private static final DateTimeFormatter[] FORMATTERS = {
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
+        DateTimeFormatter.ISO_LOCAL_DATE_TIME,
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+    };
+
+    private static final int[] NANOS_SCALE = {
+        1_000_000_000, 100_000_000, 10_000_000, 1_000_000, 100_000, 10_000, 1_000, 100, 10, 1
+    };
+
+    /** Форматы, которые разбираются вручную. */
+    private enum Layout {
+        /** {@code yyyy-MM-dd HH:mm:ss}. */
+        SECONDS,
+        /** {@code yyyy-MM-ddTHH:mm[:ss[.n]]}. */
+        ISO,
+        /** {@code yyyy-MM-dd HH:mm}. */
+        MINUTES
+    }
+
+    private static final Layout[] LAYOUTS = Layout.values();
+
+    // Формат, подошедший последним
+    private volatile Layout detected = Layout.SECONDS;
+
+    /** Разбирает дату из поля записи. */
+    LocalDateTime parse(CsvFieldTokenizer fields, int field) {
+        Layout hint = detected;
+        LocalDateTime result = tryParse(hint, fields, field);
+        if (result != null) {
+            return result;
+        }
+
+        for (Layout layout : LAYOUTS) {
+            if (layout != hint) {
+                result = tryParse(layout, fields, field);
+                if (result != null) {
+                    detected = layout;
+                    return result;
+                }
+            }
+        }
+        return parseWithFormatters(fields.text(field));
+    }
+
+    /** Пробует один формат; null — дата в нём не записана. */
+    private static LocalDateTime tryParse(Layout layout, CsvFieldTokenizer fields, int field) {
+        switch (layout) {
+            case SECONDS:
+                return fields.length(field) == 19 && fields.byteAt(field, 16) == ':'
+                        ? parseFixed(fields, field, ' ', true)
+                        : null;
+            case MINUTES:
+                return fields.length(field) == 16 ? parseFixed(fields, field, ' ', false) : null;
+            default:
+                return parseIso(fields, field);
+        }
+    }
+
+    /**
+     * Разбирает {@code yyyy-MM-dd?HH:mm[:ss]}, как форматтер по шаблону: несуществующее число
+     * месяца (например, 31 апреля) заменяется последним днём месяца.
+     */
+    private static LocalDateTime parseFixed(
+            CsvFieldTokenizer fields, int field, char separator, boolean withSeconds) {
+        if (!hasDateTimeSeparators(fields, field, separator)) {
+            return null;
+        }
+        int year = fields.digits(field, 0, 4);
+        int month = fields.digits(field, 5, 2);
+        int day = fields.digits(field, 8, 2);
+        int hour = fields.digits(field, 11, 2);
+        int minute = fields.digits(field, 14, 2);
+        int second = withSeconds ? fields.digits(field, 17, 2) : 0;
+        if (year < 1 || !isValidMonthDay(month, day) || !isValidTime(hour, minute, second)) {
+            return null;
+        }
+        int lastDay = Month.of(month).length(Year.isLeap(year));
+        return LocalDateTime.of(year, month, Math.min(day, lastDay), hour, minute, second);
+    }
+
+    /** Разбирает {@code yyyy-MM-ddTHH:mm[:ss[.n]]} (до 9 цифр дробной части), как ISO-форматтер. */
+    private static LocalDateTime parseIso(CsvFieldTokenizer fields, int field) {
+        int length = fields.length(field);
+        if (length < 16 || !hasDateTimeSeparators(fields, field, 'T')) {
+            return null;
+        }
+
+        int second = 0;
+        int nanos = 0;
+        if (length > 16) {
+            if (length < 19 || fields.byteAt(field, 16) != ':') {
+                return null;
+            }
+            second = fields.digits(field, 17, 2);
+            if (length > 19) {
+                int fraction = length - 20;
+                if (fields.byteAt(field, 19) != '.' || fraction > 9) {
+                    return null;
+                }
+                nanos = fraction == 0 ? 0 : fields.digits(field, 20, fraction);
+                if (nanos < 0) {
+                    return null;
+                }
+                nanos *= NANOS_SCALE[fraction];
+            }
+        }
+
+        int year = fields.digits(field, 0, 4);
+        int month = fields.digits(field, 5, 2);
+        int day = fields.digits(field, 8, 2);
+        int hour = fields.digits(field, 11, 2);
+        int minute = fields.digits(field, 14, 2);
+        // ISO-форматтер строгий: 31 апреля — ошибка, её сообщит разбор форматтером
+        if (year < 0
+                || !isValidMonthDay(month, day)
+                || day > Month.of(month).length(Year.isLeap(year))
+                || !isValidTime(hour, minute, second)) {
+            return null;
+        }
+        return LocalDateTime.of(year, month, day, hour, minute, second, nanos);
+    }
+
+    private static boolean hasDateTimeSeparators(
+            CsvFieldTokenizer fields, int field, char separator) {
+        return fields.byteAt(field, 4) == '-'
+                && fields.byteAt(field, 7) == '-'
+                && fields.byteAt(field, 10) == separator
+                && fields.byteAt(field, 13) == ':';
+    }
+
+    private static boolean isValidMonthDay(int month, int day) {
+        return month >= 1 && month <= 12 && day >= 1 && day <= 31;
+    }
+
+    private static boolean isValidTime(int hour, int minute, int second) {
+        return hour >= 0
+                && hour <= 23
+                && minute >= 0
+                && minute <= 59
+                && second >= 0
+                && second <= 59;
+    }
+
+    /** Разбирает то, что не разобрано вручную (например, 24:00 или год из пяти цифр). */
+    private static LocalDateTime parseWithFormatters(String dateStr) {
+        for (DateTimeFormatter formatter : FORMATTERS) {
+            try {
+                return LocalDateTime.parse(dateStr, formatter);
+            } catch (DateTimeParseException ignored) {
+                // Пробуем следующий формат
+            }
+        }
+        throw new IllegalArgumentException("Неверный формат даты: " + dateStr);
+    }
+}
@@ -2,12 +2,14 @@ package ru.mifi.financemanager.export;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
+import java.util.Iterator;
 import ru.mifi.financemanager.domain.Transaction;
 import ru.mifi.financemanager.domain.TransactionType;
 
@@ -22,8 +24,11 @@ public class CsvExporter implements DataExporter {
 
     private static final String HEADER = "ID;Тип;Сумма;Категория;Дата;Описание";
 
+    // Буфер записи: файл пишется крупными порциями
+    private static final int BUFFER_SIZE = 256 * 1024;
+
     @Override
-    public void export(List<Transaction> transactions, String filePath) throws IOException {
+    public int export(Iterator<Transaction> transactions, String filePath) throws IOException {
         Path path = Paths.get(filePath);
 
         Path parentDir = path.getParent();
@@ -31,39 +36,57 @@ public class CsvExporter implements DataExporter {
             Files.createDirectories(parentDir);
         }
 
-        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+        int count = 0;
+        try (Writer writer =
+                new BufferedWriter(
+                        new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8),
+                        BUFFER_SIZE)) {
             writer.write(HEADER);
-            writer.newLine();
+            writer.write(System.lineSeparator());
 
-            for (Transaction transaction : transactions) {
-                String line = formatTransaction(transaction);
-                writer.write(line);
-                writer.newLine();
+            // Строка собирается в одном и том же буфере, промежуточных строк на поля нет
+            StringBuilder line = new StringBuilder(256);
+            while (transactions.hasNext()) {
+                line.setLength(0);
+                formatTransaction(transactions.next(), line);
+                line.append(System.lineSeparator());
+                writer.append(line);
+                count++;
             }
         }
+        return count;
     }
 
-    /** Форматирует транзакцию в строку CSV. */
-    private String formatTransaction(Transaction transaction) {
-        return String.join(
-                DELIMITER,
-                transaction.getId(),
-                transaction.getType() == TransactionType.INCOME ? "Доход" : "Расход",
-                transaction.getAmount().toPlainString(),
-                escapeField(transaction.getCategory()),
-                transaction.getCreatedAt().format(DATE_FORMATTER),
-                escapeField(transaction.getDescription()));
+    /** Дописывает транзакцию строкой CSV. */
+    private void formatTransaction(Transaction transaction, StringBuilder line) {
+        line.append(transaction.getId()).append(DELIMITER);
+        line.append(transaction.getType() == TransactionType.INCOME ? "Доход" : "Расход");
+        line.append(DELIMITER).append(transaction.getAmount().toPlainString()).append(DELIMITER);
+        appendEscaped(transaction.getCategory(), line);
+        line.append(DELIMITER);
+        DATE_FORMATTER.formatTo(transaction.getCreatedAt(), line);
+        line.append(DELIMITER);
+        appendEscaped(transaction.getDescription(), line);
     }
 
-    /** Экранирует поле CSV — оборачивает в кавычки если содержит спецсимволы. */
-    private String escapeField(String field) {
+    /** Дописывает поле CSV — в кавычках, если оно содержит спецсимволы. */
+    private void appendEscaped(String field, StringBuilder line) {
         if (field == null) {
-            return "";
+            return;
         }
         if (field.contains(DELIMITER) || field.contains("\"") || field.contains("\n")) {
-            return "\"" + field.replace("\"", "\"\"") + "\"";
+            line.append('"');
+            for (int i = 0; i < field.length(); i++) {
+                char c = field.charAt(i);
+                if (c == '"') {
+                    line.append('"');
+                }
+                line.append(c);
+            }
+            line.append('"');
+        } else {
+            line.append(field);
         }
-        return field;
     }
 
     @Override
@@ -0,0 +1,178 @@
+package ru.mifi.financemanager.export;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Разбивает записи CSV (UTF-8) на поля без создания промежуточных объектов.
+ *
+ * <p>Поле описывается смещениями начала и конца в исходном массиве байтов; пробелы по краям в
+ * смещения не входят. Поле с кавычками раскрывается на месте: кавычки убираются, {@code ""}
+ * превращается в {@code "}, поэтому содержимое массива в пределах записи изменяется. Правила те же,
+ * что у построчного разбора: {@code ;} внутри кавычек разделителем не считается.
+ *
+ * <p>Массивы смещений переиспользуются от записи к записи. Экземпляр не потокобезопасен: каждый
+ * блок файла разбирается своим экземпляром.
+ */
+final class CsvFieldTokenizer {
+
+    // Разделитель полей в CSV
+    private static final byte DELIMITER = ';';
+
+    private static final byte QUOTE = '"';
+
+    // Больше цифр может не поместиться в long
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private final byte[] data;
+
+    private int[] starts = new int[8];
+
+    private int[] ends = new int[8];
+
+    private int count;
+
+    CsvFieldTokenizer(byte[] data) {
+        this.data = data;
+    }
+
+    /** Разбивает запись [from, to) на поля и возвращает их число. */
+    int tokenize(int from, int to) {
+        count = 0;
+        boolean inQuotes = false;
+        int write = from;
+        int fieldStart = from;
+
+        for (int i = from; i < to; i++) {
+            byte b = data[i];
+            if (b == QUOTE) {
+                if (inQuotes && i + 1 < to && data[i + 1] == QUOTE) {
+                    data[write++] = QUOTE;
+                    i++;
+                } else {
+                    inQuotes = !inQuotes;
+                }
+            } else if (b == DELIMITER && !inQuotes) {
+                addField(fieldStart, write);
+                fieldStart = write;
+            } else {
+                data[write++] = b;
+            }
+        }
+
+        addField(fieldStart, write);
+        return count;
+    }
+
+    /** Возвращает число полей последней разобранной записи. */
+    int fieldCount() {
+        return count;
+    }
+
+    /** Возвращает длину поля в байтах. */
+    int length(int field) {
+        return ends[field] - starts[field];
+    }
+
+    /** Возвращает значение поля строкой. */
+    String text(int field) {
+        return new String(data, starts[field], length(field), StandardCharsets.UTF_8);
+    }
+
+    /** Сравнивает поле с байтами без учёта регистра ASCII-букв. */
+    boolean equalsIgnoreAsciiCase(int field, byte[] expected) {
+        if (length(field) != expected.length) {
+            return false;
+        }
+        int start = starts[field];
+        for (int i = 0; i < expected.length; i++) {
+            byte actual = data[start + i];
+            if (actual != expected[i] && toLowerAscii(actual) != toLowerAscii(expected[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Читает десятичное число вида {@code 123}, {@code 123.45} или {@code 123,45}.
+     *
+     * @return число или null, если поле в этот вид не укладывается (знак, экспонента, слишком много
+     *     цифр) — тогда его разбирает {@link BigDecimal#BigDecimal(String)}
+     */
+    BigDecimal decimal(int field) {
+        long unscaled = 0;
+        int digits = 0;
+        int scale = -1;
+        for (int i = starts[field]; i < ends[field]; i++) {
+            byte b = data[i];
+            if (b >= '0' && b <= '9') {
+                if (++digits > MAX_LONG_DIGITS) {
+                    return null;
+                }
+                unscaled = unscaled * 10 + (b - '0');
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if ((b == '.' || b == ',') && scale < 0) {
+                scale = 0;
+            } else {
+                return null;
+            }
+        }
+        if (digits == 0) {
+            return null;
+        }
+        return BigDecimal.valueOf(unscaled, Math.max(scale, 0));
+    }
+
+    /**
+     * Читает число из {@code length} цифр, начиная со смещения {@code offset} внутри поля.
+     *
+     * @return число или -1, если там не только цифры
+     */
+    int digits(int field, int offset, int length) {
+        int value = 0;
+        int start = starts[field] + offset;
+        for (int i = start; i < start + length; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /** Возвращает байт поля по смещению. */
+    byte byteAt(int field, int offset) {
+        return data[starts[field] + offset];
+    }
+
+    /** Запоминает поле [start, end), отбрасывая пробелы по краям. */
+    private void addField(int start, int end) {
+        while (start < end && isWhitespace(data[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(data[end - 1])) {
+            end--;
+        }
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    /** Пробельный байт в смысле {@link String#trim()}: байты многобайтовых символов не подходят. */
+    static boolean isWhitespace(byte b) {
+        return (b & 0xFF) <= ' ';
+    }
+
+    private static int toLowerAscii(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+}
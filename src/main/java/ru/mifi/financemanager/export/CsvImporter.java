@@ -1,31 +1,64 @@
 package ru.mifi.financemanager.export;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 import ru.mifi.financemanager.domain.Transaction;
 import ru.mifi.financemanager.domain.TransactionType;
 
-/** Импорт транзакций из CSV формата. */
+/**
+ * Импорт транзакций из CSV формата.
+ *
+ * <p>{@link #importFromFile(String)} возвращает все транзакции и ошибки списками. Для больших
+ * файлов предназначен {@link #importStreaming(String, int, Consumer)}: транзакции передаются
+ * получателю порциями, а из ошибок сохраняются только первые {@link #MAX_ERROR_SAMPLES} и общее
+ * число, так что память не растёт с размером файла. {@link #importParallel(String, int, Consumer)}
+ * делает то же, разбирая блоки файла на нескольких ядрах.
+ *
+ * <p>Записи могут занимать несколько строк: перевод строки внутри кавычек (так {@link CsvExporter}
+ * пишет многострочные описания) концом записи не считается. Чтобы одна незакрытая кавычка не
+ * поглотила остаток файла, запись в кавычках ограничена {@link #MAX_QUOTED_LINES} переводами строк
+ * и {@link #MAX_QUOTED_RECORD_BYTES} байтами: при превышении запись считается ошибочной и
+ * заканчивается на первом переводе строки внутри кавычек, а разбор продолжается со следующей строки
+ * файла. Так же обрабатывается кавычка, не закрытая до конца файла.
+ */
 public class CsvImporter {
 
-    // Разделитель полей в CSV
-    private static final String DELIMITER = ";";
+    /** Число транзакций в одной порции потокового импорта по умолчанию. */
+    public static final int DEFAULT_CHUNK_SIZE = 10_000;
 
-    private static final DateTimeFormatter PRIMARY_FORMATTER =
-            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    /** Сколько сообщений об ошибках сохраняет потоковый импорт. */
+    public static final int MAX_ERROR_SAMPLES = 100;
 
-    // Альтернативный форматтер (ISO формат)
-    private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+    /** Сколько переводов строк может быть внутри кавычек одной записи. */
+    public static final int MAX_QUOTED_LINES = 100;
+
+    /** Какой длины может быть запись, продолжающаяся в кавычках на следующих строках. */
+    public static final int MAX_QUOTED_RECORD_BYTES = 64 * 1024;
+
+    // Названия типов в байтах UTF-8 — сравниваются с полями без создания строк
+    private static final byte[] INCOME_RU = "Доход".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] INCOME_EN = "INCOME".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EXPENSE_RU = "Расход".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EXPENSE_EN = "EXPENSE".getBytes(StandardCharsets.UTF_8);
+
+    // Размер блока файла, который разбирается одной задачей
+    private static final int DEFAULT_BLOCK_BYTES = 1 << 20;
+
+    private final int blockBytes;
 
     /** Результат импорта со статистикой. */
     public static class ImportResult {
@@ -66,154 +99,525 @@ public class CsvImporter {
         }
     }
 
-    /** Импортирует транзакции из CSV файла. */
-    public ImportResult importFromFile(String filePath) throws IOException {
-        Path path = Paths.get(filePath);
+    /** Итоги потокового импорта: счётчики и первые сообщения об ошибках. */
+    public static class ImportStats {
+        private final int totalLines;
+        private final int successfulLines;
+        private final int errorCount;
+        private final List<String> errorSamples;
 
-        if (!Files.exists(path)) {
-            throw new IOException("Файл не найден: " + filePath);
+        public ImportStats(
+                int totalLines, int successfulLines, int errorCount, List<String> errorSamples) {
+            this.totalLines = totalLines;
+            this.successfulLines = successfulLines;
+            this.errorCount = errorCount;
+            this.errorSamples = errorSamples;
         }
 
-        List<Transaction> transactions = new ArrayList<>();
-        List<String> errors = new ArrayList<>();
-        int totalLines = 0;
-        int successfulLines = 0;
+        public int getTotalLines() {
+            return totalLines;
+        }
 
-        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
-            String line;
-            boolean isFirstLine = true;
+        public int getSuccessfulLines() {
+            return successfulLines;
+        }
 
-            while ((line = reader.readLine()) != null) {
-                // Пропускаем пустые строки
-                if (line.trim().isEmpty()) {
-                    continue;
-                }
+        /**
+         * Возвращает общее число ошибок (сообщений сохранено не больше {@link #MAX_ERROR_SAMPLES}).
+         */
+        public int getErrorCount() {
+            return errorCount;
+        }
 
-                // Пропускаем заголовок
-                if (isFirstLine) {
-                    isFirstLine = false;
-                    if (line.toLowerCase().contains("id") && line.toLowerCase().contains("тип")) {
-                        continue;
-                    }
-                }
+        public List<String> getErrorSamples() {
+            return errorSamples;
+        }
+
+        public boolean hasErrors() {
+            return errorCount > 0;
+        }
+    }
 
-                totalLines++;
+    /** Собирает транзакции в порции и передаёт заполненные порции получателю. */
+    private static class ChunkingConsumer implements Consumer<Transaction> {
+        private final int chunkSize;
+        private final Consumer<List<Transaction>> sink;
+        private List<Transaction> current;
 
-                try {
-                    Transaction transaction = parseLine(line, totalLines);
-                    if (transaction != null) {
-                        transactions.add(transaction);
-                        successfulLines++;
-                    }
-                } catch (Exception e) {
-                    errors.add("Строка " + totalLines + ": " + e.getMessage());
-                }
+        private ChunkingConsumer(int chunkSize, Consumer<List<Transaction>> sink) {
+            this.chunkSize = Math.max(1, chunkSize);
+            this.sink = sink;
+            this.current = new ArrayList<>(this.chunkSize);
+        }
+
+        @Override
+        public void accept(Transaction transaction) {
+            current.add(transaction);
+            if (current.size() >= chunkSize) {
+                flush();
             }
         }
 
-        return new ImportResult(transactions, totalLines, successfulLines, errors);
+        /** Передаёт получателю неполную последнюю порцию. */
+        private void flush() {
+            if (current.isEmpty()) {
+                return;
+            }
+            // Получатель может сохранить список — следующую порцию собираем в новом
+            List<Transaction> full = current;
+            current = new ArrayList<>(chunkSize);
+            sink.accept(full);
+        }
     }
 
-    /** Парсит строку CSV в транзакцию. */
-    private Transaction parseLine(String line, int lineNumber) {
-        String[] fields = splitCsvLine(line);
+    /** Результат разбора одного блока; номера записей — внутри блока, с единицы. */
+    private static class ParsedBlock {
+        private final List<Transaction> transactions = new ArrayList<>();
+        private final List<Integer> errorRecords = new ArrayList<>();
+        private final List<String> errorMessages = new ArrayList<>();
+        private int records;
+        private int errorCount;
+    }
 
-        if (fields.length < 6) {
-            throw new IllegalArgumentException(
-                    "Недостаточно полей (ожидается 6, получено " + fields.length + ")");
+    /** Объединяет результаты блоков в исходном порядке и переводит номера записей в сквозные. */
+    private static class BlockMerger {
+        private final Consumer<Transaction> consumer;
+        private final int maxErrors;
+        private final List<String> errors = new ArrayList<>();
+        private int totalLines;
+        private int successfulLines;
+        private int errorCount;
+
+        private BlockMerger(Consumer<Transaction> consumer, int maxErrors) {
+            this.consumer = consumer;
+            this.maxErrors = maxErrors;
         }
 
-        // Парсим поля
-        String id = fields[0].trim();
-        String typeStr = fields[1].trim();
-        String amountStr = fields[2].trim();
-        String category = fields[3].trim();
-        String dateStr = fields[4].trim();
-        String description = fields.length > 5 ? fields[5].trim() : "";
+        private void merge(ParsedBlock block) {
+            for (int i = 0; i < block.errorRecords.size() && errors.size() < maxErrors; i++) {
+                errors.add(
+                        "Строка "
+                                + (totalLines + block.errorRecords.get(i))
+                                + ": "
+                                + block.errorMessages.get(i));
+            }
+            errorCount += block.errorCount;
+            totalLines += block.records;
 
-        // Определяем тип транзакции
-        TransactionType type;
-        if (typeStr.equalsIgnoreCase("Доход") || typeStr.equalsIgnoreCase("INCOME")) {
-            type = TransactionType.INCOME;
-        } else if (typeStr.equalsIgnoreCase("Расход") || typeStr.equalsIgnoreCase("EXPENSE")) {
-            type = TransactionType.EXPENSE;
-        } else {
-            throw new IllegalArgumentException("Неизвестный тип транзакции: " + typeStr);
+            for (Transaction transaction : block.transactions) {
+                consumer.accept(transaction);
+                successfulLines++;
+            }
         }
 
-        // Парсим сумму
-        BigDecimal amount;
-        try {
-            amount = new BigDecimal(amountStr.replace(",", "."));
-            if (amount.compareTo(BigDecimal.ZERO) <= 0) {
-                throw new IllegalArgumentException("Сумма должна быть положительной");
+        private ImportStats toStats() {
+            return new ImportStats(totalLines, successfulLines, errorCount, errors);
+        }
+    }
+
+    /**
+     * Находит концы записей, отслеживая кавычки.
+     *
+     * <p>Одни и те же правила применяются при нарезке файла на блоки и при разборе блока, поэтому
+     * границы блоков всегда совпадают с концами записей. Смещения — в массиве, который сканируется.
+     */
+    private static class RecordScanner {
+
+        /** Что означает очередной байт. */
+        private enum Step {
+            /** Запись продолжается. */
+            CONTINUE,
+            /** Перевод строки вне кавычек — конец записи. */
+            RECORD_END,
+            /** Запись в кавычках превысила ограничения — кавычка считается незакрытой. */
+            UNCLOSED_QUOTE
+        }
+
+        private int recordStart;
+        private boolean inQuotes;
+        // Первый перевод строки внутри кавычек текущей записи; -1 — его не было
+        private int firstQuotedNewline = -1;
+        private int quotedNewlines;
+
+        /** Обрабатывает байт data[i] текущей записи. */
+        private Step accept(byte[] data, int i) {
+            if (inQuotes && firstQuotedNewline >= 0 && i - recordStart >= MAX_QUOTED_RECORD_BYTES) {
+                return Step.UNCLOSED_QUOTE;
+            }
+            byte b = data[i];
+            if (b == '"') {
+                inQuotes = !inQuotes;
+                return Step.CONTINUE;
+            }
+            if (b != '\n') {
+                return Step.CONTINUE;
+            }
+            if (!inQuotes) {
+                return Step.RECORD_END;
+            }
+            if (firstQuotedNewline < 0) {
+                firstQuotedNewline = i;
             }
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("Неверный формат суммы: " + amountStr);
+            return ++quotedNewlines > MAX_QUOTED_LINES ? Step.UNCLOSED_QUOTE : Step.CONTINUE;
         }
 
-        // Парсим дату
-        LocalDateTime dateTime = parseDateTime(dateStr);
+        /** Проверяет, что данные кончились посреди записи, переносящей строку внутри кавычек. */
+        private boolean unclosedAtEnd() {
+            return inQuotes && firstQuotedNewline >= 0;
+        }
 
-        // Валидируем категорию
-        if (category.isEmpty()) {
-            throw new IllegalArgumentException("Категория не может быть пустой");
+        /** Начинает новую запись со смещения start. */
+        private void reset(int start) {
+            recordStart = start;
+            inQuotes = false;
+            firstQuotedNewline = -1;
+            quotedNewlines = 0;
         }
 
-        // Создаём транзакцию с полным конструктором
-        return new Transaction(id, type, amount, category, description, dateTime);
+        /** Сдвигает смещения после удаления начала массива. */
+        private void shift(int removed) {
+            recordStart -= removed;
+            if (firstQuotedNewline >= 0) {
+                firstQuotedNewline -= removed;
+            }
+        }
     }
 
-    /** Разбивает строку CSV на поля с учётом кавычек. */
-    private String[] splitCsvLine(String line) {
-        List<String> fields = new ArrayList<>();
-        StringBuilder currentField = new StringBuilder();
-        boolean inQuotes = false;
+    /**
+     * Читает поток блоками примерно заданного размера, каждый из которых заканчивается на границе
+     * записи.
+     *
+     * <p>Граница — перевод строки вне кавычек (см. {@link RecordScanner}); состояние кавычек
+     * отслеживается по всему потоку, так что записи с переводами строк внутри полей не разрываются.
+     * Запись длиннее блока целиком попадает в один (увеличенный) блок; из-за ограничений записи в
+     * кавычках буфер не растёт из-за незакрытой кавычки.
+     */
+    private static class BlockReader {
+        private final InputStream in;
+        private final int targetSize;
+        private byte[] buffer;
+        private int filled;
+        private int scanned;
+        private int boundary;
+        private final RecordScanner records = new RecordScanner();
+        private boolean eof;
+
+        private BlockReader(InputStream in, int targetSize) {
+            this.in = in;
+            this.targetSize = targetSize;
+            this.buffer = new byte[targetSize * 2];
+        }
+
+        /** Возвращает следующий блок или null, если файл закончился. */
+        private byte[] next() throws IOException {
+            while (true) {
+                if (boundary >= targetSize) {
+                    return cut(boundary);
+                }
+                if (eof) {
+                    return filled > 0 ? cut(filled) : null;
+                }
 
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
+                if (filled == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = in.read(buffer, filled, buffer.length - filled);
+                if (read < 0) {
+                    eof = true;
+                    continue;
+                }
+                filled += read;
+                scan();
+            }
+        }
 
-            if (c == '"') {
-                if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"') {
-                    currentField.append('"');
-                    i++;
+        /** Ищет границы записей в только что прочитанных байтах. */
+        private void scan() {
+            int i = scanned;
+            while (i < filled) {
+                switch (records.accept(buffer, i)) {
+                    case RECORD_END:
+                        boundary = i + 1;
+                        records.reset(boundary);
+                        break;
+                    case UNCLOSED_QUOTE:
+                        // Ошибочная запись кончается на первом переводе строки в кавычках
+                        boundary = records.firstQuotedNewline + 1;
+                        records.reset(boundary);
+                        i = boundary;
+                        continue;
+                    default:
+                        break;
+                }
+                i++;
+            }
+            scanned = filled;
+        }
+
+        /** Отрезает от буфера блок [0, end), остаток сдвигает в начало. */
+        private byte[] cut(int end) {
+            byte[] block = Arrays.copyOf(buffer, end);
+            System.arraycopy(buffer, end, buffer, 0, filled - end);
+            filled -= end;
+            scanned -= end;
+            records.shift(end);
+            boundary = 0;
+            return block;
+        }
+    }
+
+    /** Создаёт импортёр. */
+    public CsvImporter() {
+        this(DEFAULT_BLOCK_BYTES);
+    }
+
+    /** Создаёт импортёр с заданным размером блока файла (для тестов). */
+    CsvImporter(int blockBytes) {
+        this.blockBytes = Math.max(1, blockBytes);
+    }
+
+    /** Импортирует транзакции из CSV файла. */
+    public ImportResult importFromFile(String filePath) throws IOException {
+        List<Transaction> transactions = new ArrayList<>();
+        ImportStats stats = parseFile(filePath, transactions::add, Integer.MAX_VALUE, null);
+        return new ImportResult(
+                transactions,
+                stats.getTotalLines(),
+                stats.getSuccessfulLines(),
+                stats.getErrorSamples());
+    }
+
+    /**
+     * Импортирует транзакции потоком: передаёт их в sink порциями по chunkSize.
+     *
+     * <p>В памяти одновременно находится только текущая порция. Исключение из sink прерывает
+     * импорт; порции, переданные до этого, остаются у получателя.
+     */
+    public ImportStats importStreaming(
+            String filePath, int chunkSize, Consumer<List<Transaction>> sink) throws IOException {
+        ChunkingConsumer chunks = new ChunkingConsumer(chunkSize, sink);
+        ImportStats stats = parseFile(filePath, chunks, MAX_ERROR_SAMPLES, null);
+        chunks.flush();
+        return stats;
+    }
+
+    /**
+     * Импортирует транзакции потоком, разбирая блоки файла параллельно в общем fork-join пуле.
+     *
+     * @see #importParallel(String, int, Consumer, ForkJoinPool)
+     */
+    public ImportStats importParallel(
+            String filePath, int chunkSize, Consumer<List<Transaction>> sink) throws IOException {
+        return importParallel(filePath, chunkSize, sink, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Импортирует транзакции потоком, разбирая блоки файла параллельно в указанном пуле.
+     *
+     * <p>Файл читается блоками, границы которых совпадают с концами записей (перевод строки внутри
+     * кавычек концом записи не считается). Блоки разбираются задачами пула, а результаты передаются
+     * в sink в исходном порядке и в потоке вызывающего; номера строк в ошибках те же, что при
+     * последовательном импорте. Одновременно в работе не больше двух блоков на поток пула, поэтому
+     * память, как и в {@link #importStreaming}, не зависит от размера файла.
+     */
+    public ImportStats importParallel(
+            String filePath, int chunkSize, Consumer<List<Transaction>> sink, ForkJoinPool pool)
+            throws IOException {
+        ChunkingConsumer chunks = new ChunkingConsumer(chunkSize, sink);
+        ImportStats stats = parseFile(filePath, chunks, MAX_ERROR_SAMPLES, pool);
+        chunks.flush();
+        return stats;
+    }
+
+    /**
+     * Читает файл блоками и передаёт разобранные транзакции в consumer по порядку.
+     *
+     * @param pool пул для параллельного разбора блоков; null — разбор в текущем потоке
+     */
+    private ImportStats parseFile(
+            String filePath, Consumer<Transaction> consumer, int maxErrors, ForkJoinPool pool)
+            throws IOException {
+        Path path = Paths.get(filePath);
+
+        if (!Files.exists(path)) {
+            throw new IOException("Файл не найден: " + filePath);
+        }
+
+        BlockMerger merger = new BlockMerger(consumer, maxErrors);
+        CsvDateParser dates = new CsvDateParser();
+        Deque<ForkJoinTask<ParsedBlock>> inFlight = new ArrayDeque<>();
+        try (InputStream in = Files.newInputStream(path)) {
+            BlockReader reader = new BlockReader(in, blockBytes);
+            int window = pool != null ? pool.getParallelism() * 2 : 0;
+            boolean first = true;
+            byte[] block;
+            while ((block = reader.next()) != null) {
+                if (pool == null) {
+                    merger.merge(parseBlock(block, first, dates, maxErrors));
                 } else {
-                    inQuotes = !inQuotes;
+                    byte[] data = block;
+                    boolean isFirst = first;
+                    inFlight.add(pool.submit(() -> parseBlock(data, isFirst, dates, maxErrors)));
+                    if (inFlight.size() >= window) {
+                        merger.merge(inFlight.poll().join());
+                    }
                 }
-            } else if (c == ';' && !inQuotes) {
-                fields.add(currentField.toString());
-                currentField = new StringBuilder();
-            } else {
-                currentField.append(c);
+                first = false;
+            }
+            while (!inFlight.isEmpty()) {
+                merger.merge(inFlight.poll().join());
+            }
+        } finally {
+            // Импорт прерван (ошибка чтения или получателя) — оставшиеся блоки не нужны
+            for (ForkJoinTask<ParsedBlock> task : inFlight) {
+                task.cancel(false);
             }
         }
 
-        fields.add(currentField.toString());
+        return merger.toStats();
+    }
 
-        return fields.toArray(new String[0]);
+    /**
+     * Разбирает блок записей.
+     *
+     * <p>Поля читаются прямо из байтов блока: строки создаются только для полей транзакции.
+     *
+     * @param first блок — начало файла (первая непустая запись может быть заголовком)
+     */
+    private ParsedBlock parseBlock(
+            byte[] block, boolean first, CsvDateParser dates, int maxErrors) {
+        ParsedBlock result = new ParsedBlock();
+        CsvFieldTokenizer fields = new CsvFieldTokenizer(block);
+        RecordScanner records = new RecordScanner();
+        boolean headerChecked = !first;
+        int start = 0;
+        int i = 0;
+
+        while (i <= block.length) {
+            boolean unclosedQuote;
+            if (i < block.length) {
+                RecordScanner.Step step = records.accept(block, i);
+                if (step == RecordScanner.Step.CONTINUE) {
+                    i++;
+                    continue;
+                }
+                unclosedQuote = step == RecordScanner.Step.UNCLOSED_QUOTE;
+            } else {
+                unclosedQuote = records.unclosedAtEnd();
+            }
+            // Запись с незакрытой кавычкой обрываем на первой строке, остальные строки разбираем
+            int end = unclosedQuote ? records.firstQuotedNewline : i;
+            i = end + 1;
+            records.reset(i);
+
+            // [recordStart, end) — одна запись
+            int recordStart = start;
+            if (end > start && block[end - 1] == '\r') {
+                end--;
+            }
+            start = i;
+
+            // Пропускаем пустые строки
+            if (isBlank(block, recordStart, end)) {
+                continue;
+            }
+
+            // Пропускаем заголовок
+            if (!headerChecked) {
+                headerChecked = true;
+                String line =
+                        new String(block, recordStart, end - recordStart, StandardCharsets.UTF_8)
+                                .toLowerCase();
+                if (line.contains("id") && line.contains("тип")) {
+                    continue;
+                }
+            }
+
+            result.records++;
+
+            try {
+                if (unclosedQuote) {
+                    throw new IllegalArgumentException("Незакрытая кавычка");
+                }
+                fields.tokenize(recordStart, end);
+                result.transactions.add(parseRecord(fields, dates));
+            } catch (Exception e) {
+                result.errorCount++;
+                if (result.errorRecords.size() < maxErrors) {
+                    result.errorRecords.add(result.records);
+                    result.errorMessages.add(e.getMessage());
+                }
+            }
+        }
+        return result;
     }
 
-    /** Парсит дату/время с поддержкой нескольких форматов. */
-    private LocalDateTime parseDateTime(String dateStr) {
-        try {
-            return LocalDateTime.parse(dateStr, PRIMARY_FORMATTER);
-        } catch (DateTimeParseException ignored) {
+    /** Собирает транзакцию из полей разобранной записи. */
+    private Transaction parseRecord(CsvFieldTokenizer fields, CsvDateParser dates) {
+        if (fields.fieldCount() < 6) {
+            throw new IllegalArgumentException(
+                    "Недостаточно полей (ожидается 6, получено " + fields.fieldCount() + ")");
+        }
+
+        TransactionType type = parseType(fields, 1);
+        BigDecimal amount = parseAmount(fields, 2);
+        LocalDateTime dateTime = dates.parse(fields, 4);
+
+        // Валидируем категорию
+        if (fields.length(3) == 0) {
+            throw new IllegalArgumentException("Категория не может быть пустой");
         }
 
-        // Пробуем ISO формат
-        try {
-            return LocalDateTime.parse(dateStr, ISO_FORMATTER);
-        } catch (DateTimeParseException ignored) {
+        // Строки создаём только теперь, когда запись прошла проверки
+        return new Transaction(
+                fields.text(0), type, amount, fields.text(3), fields.text(5), dateTime);
+    }
+
+    /** Определяет тип транзакции. */
+    private TransactionType parseType(CsvFieldTokenizer fields, int field) {
+        if (fields.equalsIgnoreAsciiCase(field, INCOME_RU)
+                || fields.equalsIgnoreAsciiCase(field, INCOME_EN)) {
+            return TransactionType.INCOME;
+        }
+        if (fields.equalsIgnoreAsciiCase(field, EXPENSE_RU)
+                || fields.equalsIgnoreAsciiCase(field, EXPENSE_EN)) {
+            return TransactionType.EXPENSE;
+        }
 
+        // Редкий случай: кириллица в другом регистре
+        String typeStr = fields.text(field);
+        if (typeStr.equalsIgnoreCase("Доход")) {
+            return TransactionType.INCOME;
+        } else if (typeStr.equalsIgnoreCase("Расход")) {
+            return TransactionType.EXPENSE;
         }
+        throw new IllegalArgumentException("Неизвестный тип транзакции: " + typeStr);
+    }
 
-        // Пробуем формат без секунд
-        try {
-            return LocalDateTime.parse(dateStr, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
-        } catch (DateTimeParseException ignored) {
+    /** Парсит сумму; запятая допускается как десятичный разделитель. */
+    private BigDecimal parseAmount(CsvFieldTokenizer fields, int field) {
+        BigDecimal amount = fields.decimal(field);
+        if (amount == null) {
+            String amountStr = fields.text(field);
+            try {
+                amount = new BigDecimal(amountStr.replace(",", "."));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Неверный формат суммы: " + amountStr);
+            }
         }
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Сумма должна быть положительной");
+        }
+        return amount;
+    }
 
-        // Если ничего не подошло — используем текущее время
-        throw new IllegalArgumentException("Неверный формат даты: " + dateStr);
+    /** Проверяет, что в [from, to) только пробельные символы. */
+    private static boolean isBlank(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!CsvFieldTokenizer.isWhitespace(data[i])) {
+                return false;
+            }
+        }
+        return true;
     }
 }
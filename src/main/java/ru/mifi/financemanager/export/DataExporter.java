@@ -1,6 +1,7 @@
 package ru.mifi.financemanager.export;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 import ru.mifi.financemanager.domain.Transaction;
 
@@ -8,7 +9,16 @@ import ru.mifi.financemanager.domain.Transaction;
 public interface DataExporter {
 
     /** Экспортирует список транзакций в файл. */
-    void export(List<Transaction> transactions, String filePath) throws IOException;
+    default void export(List<Transaction> transactions, String filePath) throws IOException {
+        export(transactions.iterator(), filePath);
+    }
+
+    /**
+     * Экспортирует транзакции из источника в файл по мере их получения и возвращает их число.
+     *
+     * <p>Транзакции в список не собираются, поэтому размер истории на память не влияет.
+     */
+    int export(Iterator<Transaction> transactions, String filePath) throws IOException;
 
     /** Возвращает расширение файла для данного формата экспорта. */
     String getFileExtension();
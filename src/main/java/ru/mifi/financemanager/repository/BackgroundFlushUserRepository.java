@@ -0,0 +1,292 @@
+package ru.mifi.financemanager.repository;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import ru.mifi.financemanager.config.AppConfig;
+import ru.mifi.financemanager.domain.User;
+
+/**
+ * Декоратор репозитория, записывающий изменения в фоновом потоке.
+ *
+ * <p>Фоновый поток вызывает {@link UserRepository#flush()} обёрнутого репозитория раз в интервал, а
+ * если несохранённых изменений набралось не меньше порога — сразу, не дожидаясь конца интервала.
+ * Все изменения между записями объединяются в одну запись. Вызов {@link #flush()} из интерактивного
+ * потока не ждёт диска: он лишь просит фоновый поток записать данные как можно скорее. Синхронная
+ * запись выполняется в {@link #close()} при завершении приложения.
+ *
+ * <p>Метрики: задержка (возраст самого старого несохранённого изменения; изменения кошельков
+ * замечаются при периодической проверке) и длительность последней записи.
+ */
+public class BackgroundFlushUserRepository implements UserRepository, AutoCloseable {
+
+    // Как часто проверяем порог изменений, если интервал записи большой
+    private static final long MAX_POLL_MILLIS = 1000;
+
+    private final UserRepository delegate;
+
+    private final long intervalMillis;
+
+    private final long maxDirtyCount;
+
+    private final ScheduledExecutorService scheduler;
+
+    // Запись запрошена через flush() и ещё не выполнена
+    private final AtomicBoolean flushRequested;
+
+    // Момент, с которого есть несохранённые изменения (0 — изменений нет)
+    private volatile long dirtySinceMillis;
+
+    private volatile long lastFlushStartMillis;
+
+    private volatile long lastFlushDurationMillis;
+
+    private volatile long flushCount;
+
+    private volatile long failedFlushCount;
+
+    private volatile boolean closed;
+
+    /** Создаёт декоратор с настройками из AppConfig. */
+    public BackgroundFlushUserRepository(UserRepository delegate, AppConfig config) {
+        this(delegate, config.getFlushIntervalMillis(), config.getFlushMaxDirtyCount());
+    }
+
+    /** Создаёт декоратор с указанным интервалом записи и порогом изменений. */
+    public BackgroundFlushUserRepository(
+            UserRepository delegate, long intervalMillis, long maxDirtyCount) {
+        this.delegate = delegate;
+        this.intervalMillis = Math.max(1, intervalMillis);
+        this.maxDirtyCount = Math.max(1, maxDirtyCount);
+        this.flushRequested = new AtomicBoolean();
+        this.scheduler =
+                Executors.newSingleThreadScheduledExecutor(
+                        task -> {
+                            Thread thread = new Thread(task, "background-flush");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    /** Запускает фоновую запись. */
+    public void start() {
+        lastFlushStartMillis = System.currentTimeMillis();
+        long poll = Math.min(intervalMillis, MAX_POLL_MILLIS);
+        scheduler.scheduleWithFixedDelay(this::tick, poll, poll, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void save(User user) {
+        delegate.save(user);
+        markDirtyIfPending();
+    }
+
+    @Override
+    public Optional<User> findByLogin(String login) {
+        return delegate.findByLogin(login);
+    }
+
+    @Override
+    public boolean existsByLogin(String login) {
+        return delegate.existsByLogin(login);
+    }
+
+    @Override
+    public List<User> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<String> findAllLogins() {
+        return delegate.findAllLogins();
+    }
+
+    @Override
+    public boolean deleteByLogin(String login) {
+        boolean deleted = delegate.deleteByLogin(login);
+        if (deleted) {
+            markDirtyIfPending();
+        }
+        return deleted;
+    }
+
+    /** Просит фоновый поток записать изменения и сразу возвращает управление. */
+    @Override
+    public void flush() {
+        if (closed) {
+            delegate.flush();
+            return;
+        }
+        if (flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::flushNow);
+        }
+    }
+
+    /**
+     * Передаёт запрос обёрнутому репозиторию: журнал объединяет ожидающих в групповую фиксацию,
+     * остальные репозитории пишут синхронно. Такие записи в метриках фоновой записи не учитываются.
+     */
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        CompletableFuture<Void> future = delegate.flushAsync();
+        return future.whenComplete(
+                (ignored, error) -> {
+                    if (error == null && delegate.getPendingChangeCount() == 0) {
+                        dirtySinceMillis = 0;
+                    }
+                });
+    }
+
+    /** Синхронно записывает изменения в вызывающем потоке, учитывая запись в метриках. */
+    @Override
+    public void flushOrThrow() throws IOException {
+        flushAndRecord();
+    }
+
+    @Override
+    public boolean supportsGroupCommit() {
+        return delegate.supportsGroupCommit();
+    }
+
+    @Override
+    public long getPendingChangeCount() {
+        return delegate.getPendingChangeCount();
+    }
+
+    @Override
+    public void runAtomically(Runnable unit) {
+        delegate.runAtomically(unit);
+        markDirtyIfPending();
+    }
+
+    @Override
+    public void load() {
+        delegate.load();
+    }
+
+    @Override
+    public void evict(String login) {
+        delegate.evict(login);
+    }
+
+    @Override
+    public Optional<User> acquire(String login) {
+        return delegate.acquire(login);
+    }
+
+    @Override
+    public void release(String login) {
+        delegate.release(login);
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return delegate.isReadOnly();
+    }
+
+    /** Останавливает фоновый поток и синхронно записывает оставшиеся изменения. */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushNow();
+    }
+
+    /** Возвращает возраст самого старого несохранённого изменения в миллисекундах. */
+    public long getLagMillis() {
+        long since = dirtySinceMillis;
+        return since == 0 ? 0 : System.currentTimeMillis() - since;
+    }
+
+    /** Возвращает длительность последней записи в миллисекундах. */
+    public long getLastFlushDurationMillis() {
+        return lastFlushDurationMillis;
+    }
+
+    /** Возвращает число выполненных записей. */
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    /** Возвращает число записей, завершившихся ошибкой. */
+    public long getFailedFlushCount() {
+        return failedFlushCount;
+    }
+
+    /** Периодическая проверка: пора ли записывать. */
+    private void tick() {
+        long pending = delegate.getPendingChangeCount();
+        if (pending > 0) {
+            markDirty();
+        }
+
+        // По интервалу пишем всегда: репозиторий без изменений диск не трогает, а изменения,
+        // которые он не считает, тоже будут сохранены
+        boolean intervalElapsed =
+                System.currentTimeMillis() - lastFlushStartMillis >= intervalMillis;
+        if (pending >= maxDirtyCount || intervalElapsed) {
+            flushNow();
+        }
+    }
+
+    /** Выполняет запись в текущем потоке; false — запись не удалась (ошибка напечатана). */
+    private boolean flushNow() {
+        try {
+            flushAndRecord();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ошибка фоновой записи: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /** Выполняет запись в текущем потоке и обновляет метрики. */
+    private synchronized void flushAndRecord() throws IOException {
+        flushRequested.set(false);
+        long start = System.currentTimeMillis();
+        lastFlushStartMillis = start;
+        try {
+            // flush() обёрнутого репозитория ошибки записи только печатает — нужен вариант,
+            // который о них сообщает
+            delegate.flushOrThrow();
+            flushCount++;
+            // Изменения, пришедшие во время записи, считаются несохранёнными с её начала
+            dirtySinceMillis = delegate.getPendingChangeCount() > 0 ? start : 0;
+        } catch (IOException | RuntimeException e) {
+            // Диск недоступен или кошелёк изменили во время сериализации — повторим в следующий
+            // раз; изменения остаются несохранёнными
+            failedFlushCount++;
+            markDirty();
+            throw e;
+        } finally {
+            lastFlushDurationMillis = System.currentTimeMillis() - start;
+        }
+    }
+
+    /** Отмечает изменения, если репозиторий их видит (повторное сохранение ничего не меняет). */
+    private void markDirtyIfPending() {
+        if (delegate.getPendingChangeCount() > 0) {
+            markDirty();
+        }
+    }
+
+    /** Запоминает момент появления первого несохранённого изменения. */
+    private void markDirty() {
+        if (dirtySinceMillis == 0) {
+            dirtySinceMillis = System.currentTimeMillis();
+        }
+    }
+}
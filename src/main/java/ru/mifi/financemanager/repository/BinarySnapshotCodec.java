@@ -0,0 +1,244 @@
+package ru.mifi.financemanager.repository;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionType;
+import ru.mifi.financemanager.domain.User;
+import ru.mifi.financemanager.domain.Wallet;
+
+/**
+ * Двоичный формат снимка пользователей.
+ *
+ * <p>Структура файла:
+ *
+ * <ul>
+ *   <li>заголовок: магическое число {@code FMBS} и номер версии формата;
+ *   <li>словарь категорий — каждое название хранится один раз, транзакции и бюджеты ссылаются на
+ *       него по номеру;
+ *   <li>пользователи: логин, пароль, бюджеты и транзакции.
+ * </ul>
+ *
+ * <p>Суммы хранятся как немасштабированное long-значение и масштаб BigDecimal (значения, не
+ * помещающиеся в long, — в полной форме), время — как секунды от эпохи (UTC) и наносекунды.
+ */
+final class BinarySnapshotCodec {
+
+    // "FMBS" — Finance Manager Binary Snapshot
+    private static final int MAGIC = 0x464D4253;
+
+    private static final byte VERSION = 1;
+
+    // Признак суммы в полной форме (масштаб не помещается в байт или значение — в long)
+    private static final byte WIDE_AMOUNT = Byte.MIN_VALUE;
+
+    // Признак отсутствующего значения времени
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private BinarySnapshotCodec() {}
+
+    /** Проверяет по заголовку, что поток содержит двоичный снимок. Позиция потока не меняется. */
+    static boolean isBinary(BufferedInputStream in) throws IOException {
+        in.mark(Integer.BYTES);
+        try {
+            byte[] header = in.readNBytes(Integer.BYTES);
+            return header.length == Integer.BYTES
+                    && ((header[0] & 0xFF) << 24
+                                    | (header[1] & 0xFF) << 16
+                                    | (header[2] & 0xFF) << 8
+                                    | (header[3] & 0xFF))
+                            == MAGIC;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /** Записывает пользователей в двоичном формате. */
+    static void write(List<User> users, OutputStream target) throws IOException {
+        DataOutputStream out = new DataOutputStream(target);
+
+        // Каждый кошелёк читаем один раз: словарь и данные должны описывать одно состояние
+        List<Wallet.Snapshot> wallets = new ArrayList<>(users.size());
+        for (User user : users) {
+            wallets.add(user.getWallet().snapshot());
+        }
+        Map<String, Integer> dictionary = buildDictionary(wallets);
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+
+        out.writeInt(dictionary.size());
+        for (String category : dictionary.keySet()) {
+            writeString(out, category);
+        }
+
+        out.writeInt(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            writeString(out, user.getLogin());
+            writeString(out, user.getPassword());
+
+            Wallet.Snapshot wallet = wallets.get(i);
+            Map<String, BigDecimal> budgets = wallet.getCategoryBudgets();
+            out.writeInt(budgets.size());
+            for (Map.Entry<String, BigDecimal> budget : budgets.entrySet()) {
+                out.writeInt(dictionary.get(budget.getKey()));
+                writeAmount(out, budget.getValue());
+            }
+
+            List<Transaction> transactions = wallet.getTransactions();
+            out.writeInt(transactions.size());
+            for (Transaction transaction : transactions) {
+                writeString(out, transaction.getId());
+                out.writeByte(transaction.getType().ordinal());
+                writeAmount(out, transaction.getAmount());
+                out.writeInt(dictionary.get(transaction.getCategory()));
+                writeString(out, transaction.getDescription());
+                writeTime(out, transaction.getCreatedAt());
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Читает пользователей и передаёт их обработчику по одному — весь снимок в памяти не строится.
+     */
+    static void read(InputStream source, Consumer<User> consumer) throws IOException {
+        DataInputStream in = new DataInputStream(source);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Файл не является двоичным снимком");
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Неподдерживаемая версия двоичного снимка: " + version);
+        }
+
+        String[] dictionary = new String[in.readInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = readString(in);
+        }
+
+        int userCount = in.readInt();
+        for (int u = 0; u < userCount; u++) {
+            String login = readString(in);
+            String password = readString(in);
+            Wallet wallet = new Wallet();
+
+            int budgetCount = in.readInt();
+            for (int i = 0; i < budgetCount; i++) {
+                wallet.setBudget(dictionary[in.readInt()], readAmount(in));
+            }
+
+            // addTransaction сразу строит агрегаты — пересчёт после загрузки не нужен
+            int transactionCount = in.readInt();
+            for (int i = 0; i < transactionCount; i++) {
+                String id = readString(in);
+                TransactionType type = TYPES[in.readByte()];
+                BigDecimal amount = readAmount(in);
+                String category = dictionary[in.readInt()];
+                String description = readString(in);
+                LocalDateTime createdAt = readTime(in);
+                wallet.addTransaction(
+                        new Transaction(id, type, amount, category, description, createdAt));
+            }
+
+            // Загруженное состояние совпадает с файлом
+            wallet.markSaved(wallet.getVersion());
+            consumer.accept(new User(login, password, wallet));
+        }
+    }
+
+    /** Собирает словарь категорий транзакций и бюджетов в порядке первого появления. */
+    private static Map<String, Integer> buildDictionary(List<Wallet.Snapshot> wallets) {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        for (Wallet.Snapshot wallet : wallets) {
+            for (String category : wallet.getCategoryBudgets().keySet()) {
+                dictionary.putIfAbsent(category, dictionary.size());
+            }
+            for (Transaction transaction : wallet.getTransactions()) {
+                dictionary.putIfAbsent(transaction.getCategory(), dictionary.size());
+            }
+        }
+        return dictionary;
+    }
+
+    private static void writeAmount(DataOutputStream out, BigDecimal amount) throws IOException {
+        BigInteger unscaled = amount.unscaledValue();
+        int scale = amount.scale();
+        if (unscaled.bitLength() < Long.SIZE && scale > WIDE_AMOUNT && scale <= Byte.MAX_VALUE) {
+            out.writeByte(scale);
+            out.writeLong(unscaled.longValue());
+        } else {
+            byte[] bytes = unscaled.toByteArray();
+            out.writeByte(WIDE_AMOUNT);
+            out.writeInt(scale);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static BigDecimal readAmount(DataInputStream in) throws IOException {
+        byte scale = in.readByte();
+        if (scale != WIDE_AMOUNT) {
+            return BigDecimal.valueOf(in.readLong(), scale);
+        }
+        int wideScale = in.readInt();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new BigDecimal(new BigInteger(bytes), wideScale);
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        if (time == null) {
+            out.writeLong(NO_TIME);
+            return;
+        }
+        out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(time.getNano());
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        long seconds = in.readLong();
+        if (seconds == NO_TIME) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(seconds, in.readInt(), ZoneOffset.UTC);
+    }
+
+    /** Строка в UTF-8 с длиной в байтах; -1 — null. В отличие от writeUTF длина не ограничена. */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
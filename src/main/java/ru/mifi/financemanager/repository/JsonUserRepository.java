@@ -2,11 +2,14 @@ package ru.mifi.financemanager.repository;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.Reader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
-import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -17,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import ru.mifi.financemanager.config.AppConfig;
 import ru.mifi.financemanager.domain.User;
 
@@ -25,6 +29,17 @@ import ru.mifi.financemanager.domain.User;
  *
  * <p>Используем Gson для сериализации/десериализации. ConcurrentHashMap обеспечивает
  * потокобезопасность при работе с несколькими пользователями.
+ *
+ * <p>Снимок перезаписывается только при наличии изменений: добавления или удаления пользователя
+ * либо изменения кошелька (см. {@link ru.mifi.financemanager.domain.Wallet#isDirty()}). Сессия без
+ * изменений не затрагивает диск.
+ *
+ * <p>Снимок записывается в формате {@link SnapshotFormat} из настроек (по умолчанию JSON), а при
+ * загрузке формат определяется по содержимому файла.
+ *
+ * <p>Изменения внутри {@link #runAtomically(Runnable)} (например, обе стороны перевода) выполняются
+ * под блокировкой чтения, а запись снимка — под блокировкой записи. Снимок ждёт завершения начатых
+ * переводов и не застаёт перевод на середине; переводы между собой друг друга не ждут.
  */
 public class JsonUserRepository implements UserRepository {
 
@@ -34,29 +49,45 @@ public class JsonUserRepository implements UserRepository {
 
     private final Path dataFilePath;
 
+    private final SnapshotFormat format;
+
+    // runAtomically — чтение, запись снимка — запись
+    private final ReentrantReadWriteLock unitLock = new ReentrantReadWriteLock();
+
+    // Пользователи добавлялись или удалялись после последнего снимка
+    private volatile boolean membershipChanged;
+
     /** Создаёт репозиторий с настройками из AppConfig. */
     public JsonUserRepository(AppConfig config) {
-        this.users = new ConcurrentHashMap<>();
-        this.gson = createGson();
-        this.dataFilePath = Paths.get(config.getDataFilePath());
+        this(config.getDataFilePath(), SnapshotFormat.fromName(config.getStorageFormat()));
     }
 
     public JsonUserRepository(String dataFilePath) {
+        this(dataFilePath, SnapshotFormat.JSON);
+    }
+
+    /** Создаёт репозиторий, записывающий снимок в указанном формате. */
+    public JsonUserRepository(String dataFilePath, SnapshotFormat format) {
         this.users = new ConcurrentHashMap<>();
         this.gson = createGson();
         this.dataFilePath = Paths.get(dataFilePath);
+        this.format = format;
     }
 
-    private Gson createGson() {
+    /** Создаёт Gson в формате файла данных (используется и другими репозиториями пакета). */
+    static Gson createGson() {
         return new GsonBuilder()
                 .setPrettyPrinting()
                 .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
+                .registerTypeAdapterFactory(new WalletAdapterFactory())
                 .create();
     }
 
     @Override
     public void save(User user) {
-        users.put(user.getLogin().toLowerCase(), user);
+        if (users.put(user.getLogin().toLowerCase(), user) != user) {
+            membershipChanged = true;
+        }
     }
 
     @Override
@@ -76,49 +107,186 @@ public class JsonUserRepository implements UserRepository {
 
     @Override
     public boolean deleteByLogin(String login) {
-        return users.remove(login.toLowerCase()) != null;
+        if (users.remove(login.toLowerCase()) == null) {
+            return false;
+        }
+        membershipChanged = true;
+        return true;
     }
 
     @Override
     public void flush() {
         try {
-            Path parentDir = dataFilePath.getParent();
-            if (parentDir != null && !Files.exists(parentDir)) {
-                Files.createDirectories(parentDir);
-            }
-
-            // Сериализуем и записываем в файл
-            try (Writer writer = Files.newBufferedWriter(dataFilePath, StandardCharsets.UTF_8)) {
-                gson.toJson(new ArrayList<>(users.values()), writer);
-            }
+            flushOrThrow();
         } catch (IOException e) {
             System.err.println("Ошибка сохранения данных: " + e.getMessage());
         }
     }
 
+    @Override
+    public synchronized void flushOrThrow() throws IOException {
+        if (hasChanges()) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * Записывает полный снимок всех пользователей в файл данных.
+     *
+     * <p>Запись атомарная (см. {@link SnapshotWriter}): при сбое во время сериализации прежний файл
+     * остаётся нетронутым, поэтому снимок можно безопасно сохранять и из фонового потока. Запись
+     * ждёт завершения единиц {@link #runAtomically(Runnable)}, начатых в других потоках.
+     */
+    protected void writeSnapshot() throws IOException {
+        unitLock.writeLock().lock();
+        try {
+            writeSnapshotLocked();
+        } finally {
+            unitLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void runAtomically(Runnable unit) {
+        unitLock.readLock().lock();
+        try {
+            unit.run();
+        } finally {
+            unitLock.readLock().unlock();
+        }
+    }
+
+    private void writeSnapshotLocked() throws IOException {
+        List<User> snapshot = new ArrayList<>(users.values());
+
+        // Версии фиксируем до записи: изменения во время сериализации попадут в следующий снимок
+        long[] versions = new long[snapshot.size()];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = snapshot.get(i).getWallet().getVersion();
+        }
+        membershipChanged = false;
+
+        try {
+            SnapshotWriter.write(
+                    dataFilePath,
+                    out -> {
+                        if (format == SnapshotFormat.BINARY) {
+                            BinarySnapshotCodec.write(snapshot, out);
+                            return;
+                        }
+                        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                        gson.toJson(snapshot, writer);
+                        writer.flush();
+                    });
+        } catch (IOException | RuntimeException e) {
+            membershipChanged = true;
+            throw e;
+        }
+
+        for (int i = 0; i < versions.length; i++) {
+            snapshot.get(i).getWallet().markSaved(versions[i]);
+        }
+    }
+
+    @Override
+    public long getPendingChangeCount() {
+        long count = membershipChanged ? 1 : 0;
+        for (User user : users.values()) {
+            count += user.getWallet().getUnsavedChangeCount();
+        }
+        return count;
+    }
+
+    /** Проверяет, изменились ли данные после последнего снимка. */
+    protected boolean hasChanges() {
+        if (membershipChanged) {
+            return true;
+        }
+        for (User user : users.values()) {
+            if (user.isDirty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Загружает пользователей потоково: каждый пользователь десериализуется и кладётся в карту
+     * сразу, поэтому в памяти одновременно находится дерево только одного пользователя, а не всего
+     * файла. Двоичный снимок распознаётся по заголовку.
+     */
     @Override
     public void load() {
+        try {
+            loadOrThrow();
+        } catch (IOException e) {
+            System.err.println("Ошибка загрузки данных: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Загружает снимок, как {@link #load()}, но сообщает об ошибке чтения или разбора исключением.
+     *
+     * <p>Нужен тем, кто не должен принимать повреждённый файл за пустой (например, конвертеру
+     * снимков). Пустой файл или {@code null} ошибкой не считаются.
+     */
+    public void loadOrThrow() throws IOException {
         if (!Files.exists(dataFilePath)) {
             return;
         }
 
-        try (Reader reader = Files.newBufferedReader(dataFilePath, StandardCharsets.UTF_8)) {
-            Type listType = new TypeToken<List<User>>() {}.getType();
-            List<User> loadedUsers = gson.fromJson(reader, listType);
-
-            if (loadedUsers != null) {
+        try (BufferedInputStream in = new BufferedInputStream(Files.newInputStream(dataFilePath))) {
+            if (BinarySnapshotCodec.isBinary(in)) {
                 users.clear();
-                for (User user : loadedUsers) {
-                    users.put(user.getLogin().toLowerCase(), user);
+                membershipChanged = false;
+                BinarySnapshotCodec.read(
+                        in, user -> users.put(user.getLogin().toLowerCase(), user));
+                return;
+            }
+
+            JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            // Пустой файл или null — данных нет; обрыв дальше — ошибка
+            JsonToken first;
+            try {
+                first = reader.peek();
+            } catch (EOFException e) {
+                return;
+            }
+            if (first == JsonToken.NULL) {
+                return;
+            }
+            if (first != JsonToken.BEGIN_ARRAY) {
+                throw new IOException("Ожидался массив пользователей, найдено: " + first);
+            }
+
+            users.clear();
+            membershipChanged = false;
+            reader.beginArray();
+            while (reader.hasNext()) {
+                User user = gson.fromJson(reader, User.class);
+                if (user == null) {
+                    continue;
                 }
+                // Агрегаты кошелька не хранятся в JSON — восстанавливаем их
+                user.getWallet().recalculateAggregates();
+                users.put(user.getLogin().toLowerCase(), user);
             }
-        } catch (IOException e) {
-            System.err.println("Ошибка загрузки данных: " + e.getMessage());
-        } catch (Exception e) {
-            System.err.println("Ошибка парсинга файла данных: " + e.getMessage());
+            reader.endArray();
+        } catch (RuntimeException e) {
+            throw new IOException("Ошибка парсинга файла данных: " + e.getMessage(), e);
         }
     }
 
+    /** Возвращает формат, в котором записывается снимок. */
+    public SnapshotFormat getFormat() {
+        return format;
+    }
+
+    /** Возвращает путь к файлу снимка данных. */
+    protected Path getDataFilePath() {
+        return dataFilePath;
+    }
+
     /** Возвращает количество пользователей в репозитории. */
     public int count() {
         return users.size();
@@ -0,0 +1,508 @@
+package ru.mifi.financemanager.repository;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import ru.mifi.financemanager.config.AppConfig;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.User;
+import ru.mifi.financemanager.domain.WalletListener;
+
+/**
+ * Репозиторий с ленивой загрузкой пользователей из JSON-снимка.
+ *
+ * <p>Формат снимка совпадает с {@link JsonUserRepository}, но рядом с ним хранится индекс ({@code
+ * users.json.idx}): логин пользователя и положение его записи в файле (смещение и длина в байтах).
+ * При старте читается только индекс. Кошелёк пользователя загружается при первом обращении к {@link
+ * #findByLogin(String)} и может быть выгружен после выхода пользователя ({@link #evict(String)}).
+ *
+ * <p>При {@link #flush()} изменённые пользователи сериализуются заново, а записи незагруженных
+ * пользователей копируются из старого снимка байт в байт. Если индекс отсутствует или относится к
+ * другой версии снимка, выполняется обычная полная загрузка, а индекс пишется при следующем flush.
+ *
+ * <p>Пользователь, закреплённый через {@link #acquire(String)} (открытой сессией или переводом), не
+ * выгружается: иначе изменения экземпляра, который ещё у кого-то в руках, не попали бы в снимок.
+ * Выгрузка закреплённого или изменённого пользователя откладывается до снятия последнего
+ * закрепления или до записи его изменений. Запись снимка ждёт завершения единиц {@link
+ * #runAtomically(Runnable)}, поэтому перевод попадает в снимок целиком.
+ */
+public class LazyJsonUserRepository implements UserRepository {
+
+    private final Gson gson;
+
+    private final Path dataFilePath;
+
+    private final Path indexFilePath;
+
+    // Положение записей пользователей в текущем снимке: логин в нижнем регистре -> запись
+    private volatile Map<String, IndexEntry> index;
+
+    // Загруженные в память пользователи
+    private final Map<String, User> loadedUsers;
+
+    // Пользователи, изменённые (или удалённые) после последнего flush
+    private final Set<String> dirtyLogins;
+
+    // Число закреплений пользователей (см. acquire): закреплённый пользователь не выгружается
+    private final Map<String, Integer> pins;
+
+    // Пользователи, выгрузка которых отложена до снятия закреплений или записи изменений
+    private final Set<String> pendingEvictions;
+
+    // runAtomically — чтение, запись снимка — запись
+    private final ReentrantReadWriteLock unitLock = new ReentrantReadWriteLock();
+
+    // Индекс не соответствует снимку и должен быть записан при следующем flush
+    private volatile boolean indexStale;
+
+    /** Запись индекса: где в снимке лежит пользователь. */
+    private static class IndexEntry {
+        private String login;
+        private long offset;
+        private int length;
+
+        private IndexEntry(String login, long offset, int length) {
+            this.login = login;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /** Содержимое файла индекса. */
+    private static class IndexFile {
+        // Отпечаток снимка, для которого построен индекс
+        private String snapshot;
+        private List<IndexEntry> users;
+    }
+
+    /** Создаёт репозиторий с настройками из AppConfig. */
+    public LazyJsonUserRepository(AppConfig config) {
+        this(config.getDataFilePath());
+    }
+
+    public LazyJsonUserRepository(String dataFilePath) {
+        this.gson = JsonUserRepository.createGson();
+        this.dataFilePath = Paths.get(dataFilePath);
+        this.indexFilePath = Paths.get(dataFilePath + ".idx");
+        this.index = new ConcurrentHashMap<>();
+        this.loadedUsers = new ConcurrentHashMap<>();
+        this.dirtyLogins = ConcurrentHashMap.newKeySet();
+        this.pins = new ConcurrentHashMap<>();
+        this.pendingEvictions = ConcurrentHashMap.newKeySet();
+        this.indexStale = false;
+    }
+
+    @Override
+    public void save(User user) {
+        String key = user.getLogin().toLowerCase();
+        User previous = loadedUsers.put(key, user);
+
+        // Повторное сохранение того же объекта ничего не меняет — изменения отмечает слушатель
+        if (previous != user) {
+            attach(user);
+            dirtyLogins.add(key);
+        }
+    }
+
+    /** Находит пользователя, при необходимости загружая его запись из снимка. */
+    @Override
+    public Optional<User> findByLogin(String login) {
+        String key = login.toLowerCase();
+        User user = loadedUsers.get(key);
+        if (user != null) {
+            return Optional.of(user);
+        }
+
+        if (!index.containsKey(key)) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.ofNullable(loadedUsers.computeIfAbsent(key, this::hydrate));
+        } catch (UncheckedIOException e) {
+            System.err.println("Ошибка загрузки пользователя " + login + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public boolean existsByLogin(String login) {
+        String key = login.toLowerCase();
+        return loadedUsers.containsKey(key) || index.containsKey(key);
+    }
+
+    /** Возвращает всех пользователей — загружает в память каждого из них. */
+    @Override
+    public List<User> findAll() {
+        List<User> result = new ArrayList<>();
+        for (String login : findAllLogins()) {
+            findByLogin(login).ifPresent(result::add);
+        }
+        return result;
+    }
+
+    /** Возвращает логины по индексу, не загружая кошельки. */
+    @Override
+    public List<String> findAllLogins() {
+        Map<String, String> logins = new TreeMap<>();
+        for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+            logins.put(entry.getKey(), entry.getValue().login);
+        }
+        for (Map.Entry<String, User> entry : loadedUsers.entrySet()) {
+            logins.put(entry.getKey(), entry.getValue().getLogin());
+        }
+        return new ArrayList<>(logins.values());
+    }
+
+    @Override
+    public boolean deleteByLogin(String login) {
+        String key = login.toLowerCase();
+        User removedUser = loadedUsers.remove(key);
+        IndexEntry removedEntry = index.remove(key);
+        if (removedUser != null) {
+            removedUser.getWallet().setListener(null);
+        }
+
+        boolean deleted = removedUser != null || removedEntry != null;
+        if (deleted) {
+            dirtyLogins.add(key);
+        }
+        return deleted;
+    }
+
+    /**
+     * Выгружает пользователя из памяти; если он закреплён или его изменения ещё не записаны,
+     * выгрузка откладывается.
+     */
+    @Override
+    public void evict(String login) {
+        String key = login.toLowerCase();
+        pendingEvictions.add(key);
+        tryEvict(key);
+    }
+
+    /**
+     * Находит пользователя и закрепляет его. Поиск (с загрузкой из снимка) и закрепление — одно
+     * действие над записью пользователя, как и выгрузка, поэтому выгрузка не вклинится между ними.
+     */
+    @Override
+    public Optional<User> acquire(String login) {
+        String key = login.toLowerCase();
+        try {
+            return Optional.ofNullable(
+                    loadedUsers.compute(
+                            key,
+                            (ignored, loaded) -> {
+                                User user = loaded != null ? loaded : hydrate(key);
+                                if (user != null) {
+                                    pins.merge(key, 1, Integer::sum);
+                                }
+                                return user;
+                            }));
+        } catch (UncheckedIOException e) {
+            System.err.println("Ошибка загрузки пользователя " + login + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void release(String login) {
+        String key = login.toLowerCase();
+        Integer left = pins.computeIfPresent(key, (ignored, count) -> count > 1 ? count - 1 : null);
+        if (left == null && pendingEvictions.contains(key)) {
+            tryEvict(key);
+        }
+    }
+
+    /** Выгружает пользователя, если он не закреплён и все его изменения записаны на диск. */
+    private void tryEvict(String key) {
+        User remaining =
+                loadedUsers.computeIfPresent(
+                        key,
+                        (ignored, user) -> {
+                            if (pins.containsKey(key)
+                                    || dirtyLogins.contains(key)
+                                    || !index.containsKey(key)) {
+                                return user;
+                            }
+                            user.getWallet().setListener(null);
+                            return null;
+                        });
+        if (remaining == null) {
+            pendingEvictions.remove(key);
+        }
+    }
+
+    /** Возвращает число пользователей с несохранёнными изменениями. */
+    @Override
+    public long getPendingChangeCount() {
+        return dirtyLogins.size();
+    }
+
+    /** Возвращает число пользователей, загруженных в память. */
+    public int getLoadedCount() {
+        return loadedUsers.size();
+    }
+
+    /** Возвращает общее число пользователей. */
+    public int count() {
+        return findAllLogins().size();
+    }
+
+    /** Записывает снимок и индекс, если с прошлого сохранения были изменения. */
+    @Override
+    public void flush() {
+        try {
+            flushOrThrow();
+        } catch (IOException e) {
+            System.err.println("Ошибка сохранения данных: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Записывает изменения и выгружает пользователей, чья выгрузка ждала записи.
+     *
+     * <p>Выгрузка идёт вне монитора репозитория: загрузка пользователя из снимка берёт монитор,
+     * удерживая запись пользователя в карте, а выгрузка берёт эту запись.
+     */
+    @Override
+    public void flushOrThrow() throws IOException {
+        synchronized (this) {
+            if (dirtyLogins.isEmpty() && !indexStale) {
+                return;
+            }
+
+            unitLock.writeLock().lock();
+            try {
+                writeChanges();
+            } finally {
+                unitLock.writeLock().unlock();
+            }
+        }
+
+        for (String key : pendingEvictions) {
+            tryEvict(key);
+        }
+    }
+
+    @Override
+    public void runAtomically(Runnable unit) {
+        unitLock.readLock().lock();
+        try {
+            unit.run();
+        } finally {
+            unitLock.readLock().unlock();
+        }
+    }
+
+    private void writeChanges() throws IOException {
+        // Снимаем отметки заранее: изменения, сделанные во время записи, попадут в следующий flush
+        Set<String> flushedLogins = new HashSet<>(dirtyLogins);
+        dirtyLogins.removeAll(flushedLogins);
+
+        try {
+            Map<String, IndexEntry> newIndex = new ConcurrentHashMap<>();
+            try (FileChannel source =
+                    Files.exists(dataFilePath) ? FileChannel.open(dataFilePath) : null) {
+                SnapshotWriter.write(dataFilePath, out -> writeUsers(out, source, newIndex));
+            }
+            index = newIndex;
+            writeIndex();
+            indexStale = false;
+        } catch (IOException e) {
+            dirtyLogins.addAll(flushedLogins);
+            throw e;
+        } catch (UncheckedIOException e) {
+            dirtyLogins.addAll(flushedLogins);
+            throw e.getCause();
+        }
+    }
+
+    /** Загружает индекс; при его отсутствии или устаревании — все данные целиком. */
+    @Override
+    public void load() {
+        index = new ConcurrentHashMap<>();
+        loadedUsers.clear();
+        dirtyLogins.clear();
+        pendingEvictions.clear();
+        indexStale = false;
+
+        if (!Files.exists(dataFilePath)) {
+            return;
+        }
+
+        try {
+            if (loadIndex()) {
+                return;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Индекс данных повреждён, выполняется полная загрузка");
+        }
+
+        JsonUserRepository fullRepository = new JsonUserRepository(dataFilePath.toString());
+        fullRepository.load();
+        for (User user : fullRepository.findAll()) {
+            loadedUsers.put(user.getLogin().toLowerCase(), user);
+            attach(user);
+        }
+        indexStale = true;
+    }
+
+    /** Читает индекс, если он построен для текущей версии снимка. */
+    private boolean loadIndex() throws IOException {
+        if (!Files.exists(indexFilePath)) {
+            return false;
+        }
+
+        IndexFile indexFile;
+        try (Reader reader = Files.newBufferedReader(indexFilePath, StandardCharsets.UTF_8)) {
+            indexFile = gson.fromJson(reader, IndexFile.class);
+        }
+        if (indexFile == null
+                || indexFile.users == null
+                || !SnapshotWriter.fingerprint(dataFilePath).equals(indexFile.snapshot)) {
+            return false;
+        }
+
+        Map<String, IndexEntry> loadedIndex = new ConcurrentHashMap<>();
+        for (IndexEntry entry : indexFile.users) {
+            loadedIndex.put(entry.login.toLowerCase(), entry);
+        }
+        index = loadedIndex;
+        return true;
+    }
+
+    /**
+     * Загружает одного пользователя по его записи в снимке.
+     *
+     * <p>Синхронизирован с {@link #flush()}: запись индекса берётся под той же блокировкой, что и
+     * замена снимка, поэтому смещение всегда соответствует файлу.
+     */
+    private synchronized User hydrate(String key) {
+        IndexEntry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(dataFilePath)) {
+            String json = new String(readRange(channel, entry), StandardCharsets.UTF_8);
+            User user = gson.fromJson(json, User.class);
+            user.getWallet().recalculateAggregates();
+            attach(user);
+            return user;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Пишет массив пользователей, запоминая положение каждой записи для нового индекса. */
+    private void writeUsers(OutputStream out, FileChannel source, Map<String, IndexEntry> newIndex)
+            throws IOException {
+        Map<String, String> logins = new TreeMap<>();
+        for (String login : findAllLogins()) {
+            logins.put(login.toLowerCase(), login);
+        }
+
+        byte[] separator = ",\n".getBytes(StandardCharsets.UTF_8);
+        long position = 0;
+        out.write('[');
+        out.write('\n');
+        position += 2;
+
+        boolean first = true;
+        for (Map.Entry<String, String> login : logins.entrySet()) {
+            byte[] record = serializedUser(login.getKey(), source);
+            if (record == null) {
+                continue;
+            }
+            if (!first) {
+                out.write(separator);
+                position += separator.length;
+            }
+            first = false;
+
+            out.write(record);
+            newIndex.put(login.getKey(), new IndexEntry(login.getValue(), position, record.length));
+            position += record.length;
+        }
+
+        out.write('\n');
+        out.write(']');
+        out.write('\n');
+    }
+
+    /** Возвращает запись пользователя: сериализует загруженного или копирует из старого снимка. */
+    private byte[] serializedUser(String key, FileChannel source) throws IOException {
+        User user = loadedUsers.get(key);
+        if (user != null) {
+            return gson.toJson(user).getBytes(StandardCharsets.UTF_8);
+        }
+
+        IndexEntry entry = index.get(key);
+        if (entry == null || source == null) {
+            return null;
+        }
+        return readRange(source, entry);
+    }
+
+    /** Записывает файл индекса, привязанный к текущему снимку. */
+    private void writeIndex() throws IOException {
+        IndexFile indexFile = new IndexFile();
+        indexFile.snapshot = SnapshotWriter.fingerprint(dataFilePath);
+        indexFile.users = new ArrayList<>(index.values());
+
+        String json = gson.toJson(indexFile);
+        SnapshotWriter.write(
+                indexFilePath, out -> out.write(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** Подключает отметку об изменениях к кошельку пользователя. */
+    private void attach(User user) {
+        String key = user.getLogin().toLowerCase();
+        user.getWallet()
+                .setListener(
+                        new WalletListener() {
+                            @Override
+                            public void onTransactionAdded(Transaction transaction) {
+                                dirtyLogins.add(key);
+                            }
+
+                            @Override
+                            public void onBudgetChanged(String category, BigDecimal limit) {
+                                dirtyLogins.add(key);
+                            }
+                        });
+    }
+
+    /** Читает диапазон байт записи пользователя. */
+    private static byte[] readRange(FileChannel channel, IndexEntry entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+        long position = entry.offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Неожиданный конец файла данных");
+            }
+            position += read;
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,112 @@
+package ru.mifi.financemanager.repository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import ru.mifi.financemanager.domain.User;
+
+/**
+ * Чтение истории транзакций из {@link MappedTransactionFile} без загрузки всего архива.
+ *
+ * <p>При загрузке читается лишь каталог пользователей, транзакции остаются в отображении файла.
+ * Запросы по истории ({@link #getHistory(String)}) читают записи прямо из отображения и создают
+ * объекты только для попавших в выборку транзакций. Полный пользователь с кошельком собирается при
+ * обращении к {@link #findByLogin(String)} и может быть выгружен через {@link #evict(String)}.
+ *
+ * <p>Предназначен для отчётов и просмотра больших архивов. Файл только читается, поэтому сохранения
+ * и удаления здесь нет; в приложении читатель подключается режимом хранения {@code mapped} через
+ * {@link MappedUserRepository}.
+ */
+public class MappedHistoryReader implements AutoCloseable {
+
+    private final Path filePath;
+
+    // Пользователи, уже собранные из файла
+    private final Map<String, User> materialized;
+
+    private volatile MappedTransactionFile file;
+
+    public MappedHistoryReader(String filePath) {
+        this.filePath = Paths.get(filePath);
+        this.materialized = new ConcurrentHashMap<>();
+    }
+
+    /** Отображает файл в память и читает каталог пользователей. */
+    public synchronized void load() {
+        materialized.clear();
+        closeFile();
+        if (!Files.exists(filePath)) {
+            return;
+        }
+
+        try {
+            file = MappedTransactionFile.open(filePath);
+        } catch (IOException e) {
+            System.err.println("Ошибка открытия файла транзакций: " + e.getMessage());
+        }
+    }
+
+    /** Возвращает историю пользователя, читаемую прямо из отображения файла. */
+    public Optional<MappedTransactionFile.History> getHistory(String login) {
+        MappedTransactionFile current = file;
+        return current != null ? current.getHistory(login) : Optional.empty();
+    }
+
+    /**
+     * Собирает пользователя с кошельком из файла; собранный остаётся в памяти до {@link #evict}.
+     */
+    public Optional<User> findByLogin(String login) {
+        Optional<MappedTransactionFile.History> history = getHistory(login);
+        if (history.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(
+                materialized.computeIfAbsent(login.toLowerCase(), key -> history.get().toUser()));
+    }
+
+    /** Проверяет, есть ли пользователь в файле. */
+    public boolean existsByLogin(String login) {
+        return getHistory(login).isPresent();
+    }
+
+    /** Возвращает логины всех пользователей из каталога файла. */
+    public List<String> findAllLogins() {
+        MappedTransactionFile current = file;
+        return current != null ? current.getLogins() : new ArrayList<>();
+    }
+
+    /** Выгружает собранного пользователя из памяти. */
+    public void evict(String login) {
+        materialized.remove(login.toLowerCase());
+    }
+
+    /** Возвращает число пользователей, собранных в память. */
+    public int getMaterializedCount() {
+        return materialized.size();
+    }
+
+    /** Закрывает файл. */
+    @Override
+    public synchronized void close() {
+        materialized.clear();
+        closeFile();
+    }
+
+    private void closeFile() {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка закрытия файла транзакций: " + e.getMessage());
+        }
+        file = null;
+    }
+}
@@ -0,0 +1,599 @@
+package ru.mifi.financemanager.repository;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionType;
+import ru.mifi.financemanager.domain.User;
+import ru.mifi.financemanager.domain.Wallet;
+
+/**
+ * Файл транзакций с фиксированной длиной записи, читаемый через отображение в память.
+ *
+ * <p>Структура файла:
+ *
+ * <ul>
+ *   <li>записи транзакций по {@value #RECORD_SIZE} байт, сгруппированные по пользователям и
+ *       упорядоченные по времени внутри пользователя;
+ *   <li>область строк (идентификаторы и описания), на которую ссылаются записи;
+ *   <li>словарь категорий и каталог пользователей (логин, пароль, бюджеты, диапазон записей);
+ *   <li>концевик со смещениями областей.
+ * </ul>
+ *
+ * <p>При открытии в память читаются только словарь и каталог. Записи транзакций остаются в
+ * отображении ({@link FileChannel#map}) и разбираются по требованию: выборка за период находит
+ * границы двоичным поиском по времени и создаёт объекты {@link Transaction} только для попавших в
+ * неё записей. Файл отображается сегментами по 1 ГБ, поэтому его размер не ограничен 2 ГБ.
+ *
+ * <p>Файл неизменяемый: он строится целиком из снимка пользователей методом {@link #write}.
+ */
+public final class MappedTransactionFile implements AutoCloseable {
+
+    // "FMMT" — Finance Manager Mapped Transactions
+    private static final int MAGIC = 0x464D4D54;
+
+    private static final int VERSION = 1;
+
+    /** Размер записи транзакции в байтах. */
+    static final int RECORD_SIZE = 40;
+
+    // Смещения полей внутри записи
+    private static final int EPOCH_SECOND = 0;
+    private static final int NANO = 8;
+    private static final int CATEGORY = 12;
+    private static final int UNSCALED = 16;
+    private static final int SCALE = 24;
+    private static final int TYPE = 25;
+    private static final int STRINGS = 28;
+    private static final int SEQUENCE = 36;
+
+    // Концевик: смещения строк, словаря и каталога, число записей, магическое число и версия
+    private static final int TRAILER_SIZE = 4 * Long.BYTES + 2 * Integer.BYTES;
+
+    // Масштаб-признак: сумма не помещается в long и хранится строкой в области строк
+    private static final byte WIDE_AMOUNT = Byte.MIN_VALUE;
+
+    // Время транзакции не задано
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    // Перекрытие сегментов: запись или короткая строка на границе читается из одного сегмента
+    private static final int SEGMENT_OVERLAP = 1 << 16;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer[] segments;
+
+    private final long heapOffset;
+
+    private final String[] categories;
+
+    // Каталог пользователей: логин в нижнем регистре -> запись каталога
+    private final Map<String, History> histories;
+
+    /** Читает концевик, словарь категорий и каталог пользователей. */
+    private MappedTransactionFile(FileChannel channel, MappedByteBuffer[] segments, long size)
+            throws IOException {
+        this.channel = channel;
+        this.segments = segments;
+
+        long trailer = size - TRAILER_SIZE;
+        if (getInt(trailer + 4 * Long.BYTES) != MAGIC) {
+            throw new IOException("Файл не является файлом транзакций");
+        }
+        int version = getInt(trailer + 4 * Long.BYTES + Integer.BYTES);
+        if (version != VERSION) {
+            throw new IOException("Неподдерживаемая версия файла транзакций: " + version);
+        }
+        this.heapOffset = getLong(trailer);
+        this.categories = readDictionary(getLong(trailer + Long.BYTES));
+        this.histories = readUsers(getLong(trailer + 2 * Long.BYTES));
+    }
+
+    /** Записывает пользователей в файл атомарно (см. {@link SnapshotWriter}). */
+    public static void write(Path path, Collection<User> users) throws IOException {
+        List<User> snapshot = new ArrayList<>(users);
+        SnapshotWriter.write(path, out -> writeTo(snapshot, out));
+    }
+
+    /** Открывает файл и отображает его в память только для чтения. */
+    public static MappedTransactionFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < TRAILER_SIZE) {
+                throw new IOException("Файл транзакций повреждён: " + path);
+            }
+
+            int count = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            MappedByteBuffer[] segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = i * SEGMENT_SIZE;
+                long length = Math.min(size - start, SEGMENT_SIZE + SEGMENT_OVERLAP);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+
+            return new MappedTransactionFile(channel, segments, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Возвращает логины всех пользователей файла. */
+    public List<String> getLogins() {
+        List<String> logins = new ArrayList<>(histories.size());
+        for (History history : histories.values()) {
+            logins.add(history.login);
+        }
+        return logins;
+    }
+
+    /** Возвращает историю пользователя без разбора его транзакций. */
+    public Optional<History> getHistory(String login) {
+        return Optional.ofNullable(histories.get(login.toLowerCase()));
+    }
+
+    /** Возвращает число пользователей в файле. */
+    public int getUserCount() {
+        return histories.size();
+    }
+
+    /**
+     * Закрывает канал файла. Отображения освобождаются сборщиком мусора, поэтому после закрытия
+     * историями пользоваться нельзя.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** История транзакций одного пользователя поверх отображения файла. */
+    public final class History {
+
+        private final String login;
+
+        private final String password;
+
+        private final Map<String, BigDecimal> budgets;
+
+        // Номер первой записи пользователя и число записей
+        private final long firstRecord;
+
+        private final int size;
+
+        private History(
+                String login,
+                String password,
+                Map<String, BigDecimal> budgets,
+                long firstRecord,
+                int size) {
+            this.login = login;
+            this.password = password;
+            this.budgets = budgets;
+            this.firstRecord = firstRecord;
+            this.size = size;
+        }
+
+        public String getLogin() {
+            return login;
+        }
+
+        /** Возвращает число транзакций пользователя. */
+        public int size() {
+            return size;
+        }
+
+        /** Возвращает транзакцию по номеру в порядке времени. */
+        public Transaction get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return readTransaction(recordPosition(index));
+        }
+
+        /** Возвращает транзакции за период (границы включительно) в порядке времени. */
+        public List<Transaction> getTransactionsByPeriod(LocalDateTime from, LocalDateTime to) {
+            List<Transaction> result = new ArrayList<>();
+            if (from.isAfter(to)) {
+                return result;
+            }
+
+            int end = upperBound(to);
+            for (int i = lowerBound(from); i < end; i++) {
+                result.add(readTransaction(recordPosition(i)));
+            }
+            return result;
+        }
+
+        /** Считает транзакции за период, не создавая объектов транзакций. */
+        public int countByPeriod(LocalDateTime from, LocalDateTime to) {
+            if (from.isAfter(to)) {
+                return 0;
+            }
+            return Math.max(0, upperBound(to) - lowerBound(from));
+        }
+
+        /**
+         * Восстанавливает полного пользователя с кошельком. Транзакции добавляются в исходном
+         * порядке, поэтому кошелёк совпадает с тем, из которого строился файл.
+         */
+        public User toUser() {
+            Transaction[] ordered = new Transaction[size];
+            for (int i = 0; i < size; i++) {
+                long position = recordPosition(i);
+                ordered[getInt(position + SEQUENCE)] = readTransaction(position);
+            }
+
+            Wallet wallet = new Wallet();
+            for (Map.Entry<String, BigDecimal> budget : budgets.entrySet()) {
+                wallet.setBudget(budget.getKey(), budget.getValue());
+            }
+            for (Transaction transaction : ordered) {
+                wallet.addTransaction(transaction);
+            }
+            wallet.markSaved(wallet.getVersion());
+            return new User(login, password, wallet);
+        }
+
+        /** Первая запись с временем не раньше {@code from}. */
+        private int lowerBound(LocalDateTime from) {
+            return search(from.toEpochSecond(ZoneOffset.UTC), from.getNano(), false);
+        }
+
+        /** Первая запись с временем позже {@code to}. */
+        private int upperBound(LocalDateTime to) {
+            return search(to.toEpochSecond(ZoneOffset.UTC), to.getNano(), true);
+        }
+
+        /** Двоичный поиск по времени записей; читаются только поля времени. */
+        private int search(long seconds, int nano, boolean inclusive) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                long position = recordPosition(middle);
+                int compared =
+                        compareTime(
+                                getLong(position + EPOCH_SECOND),
+                                getInt(position + NANO),
+                                seconds,
+                                nano);
+                if (compared < 0 || (inclusive && compared == 0)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private long recordPosition(int index) {
+            return (firstRecord + index) * RECORD_SIZE;
+        }
+    }
+
+    /** Разбирает запись транзакции по её смещению в файле. */
+    private Transaction readTransaction(long position) {
+        long seconds = getLong(position + EPOCH_SECOND);
+        LocalDateTime createdAt =
+                seconds == NO_TIME
+                        ? null
+                        : LocalDateTime.ofEpochSecond(
+                                seconds, getInt(position + NANO), ZoneOffset.UTC);
+        String category = categories[getInt(position + CATEGORY)];
+        TransactionType type = TYPES[getByte(position + TYPE)];
+        byte scale = getByte(position + SCALE);
+
+        long stringPosition = heapOffset + getLong(position + STRINGS);
+        String id = readString(stringPosition);
+        stringPosition += stringLength(id);
+        String description = readString(stringPosition);
+        stringPosition += stringLength(description);
+
+        BigDecimal amount =
+                scale == WIDE_AMOUNT
+                        ? new BigDecimal(readString(stringPosition))
+                        : BigDecimal.valueOf(getLong(position + UNSCALED), scale);
+
+        return new Transaction(id, type, amount, category, description, createdAt);
+    }
+
+    private long getLong(long position) {
+        return segment(position).getLong(offsetInSegment(position));
+    }
+
+    private int getInt(long position) {
+        return segment(position).getInt(offsetInSegment(position));
+    }
+
+    private byte getByte(long position) {
+        return segment(position).get(offsetInSegment(position));
+    }
+
+    /** Читает строку (длина в байтах и UTF-8); -1 — null. */
+    private String readString(long position) {
+        int length = getInt(position);
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        int offset = offsetInSegment(position + Integer.BYTES);
+        MappedByteBuffer segment = segment(position + Integer.BYTES);
+        if (offset + length <= segment.limit()) {
+            segment.get(offset, bytes);
+        } else {
+            // Длинная строка на границе сегментов — читаем из канала
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                long from = position + Integer.BYTES;
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, from + buffer.position()) < 0) {
+                        throw new IOException("Неожиданный конец файла");
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Ошибка чтения файла транзакций", e);
+            }
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private MappedByteBuffer segment(long position) {
+        return segments[(int) (position / SEGMENT_SIZE)];
+    }
+
+    private static int offsetInSegment(long position) {
+        return (int) (position % SEGMENT_SIZE);
+    }
+
+    /** Читает словарь категорий. */
+    private String[] readDictionary(long position) {
+        String[] dictionary = new String[getInt(position)];
+        position += Integer.BYTES;
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = readString(position);
+            position += stringLength(dictionary[i]);
+        }
+        return dictionary;
+    }
+
+    /** Читает каталог пользователей. */
+    private Map<String, History> readUsers(long position) {
+        Map<String, History> result = new LinkedHashMap<>();
+        int userCount = getInt(position);
+        position += Integer.BYTES;
+        for (int u = 0; u < userCount; u++) {
+            String login = readString(position);
+            position += stringLength(login);
+            String password = readString(position);
+            position += stringLength(password);
+            long firstRecord = getLong(position);
+            int count = getInt(position + Long.BYTES);
+            position += Long.BYTES + Integer.BYTES;
+
+            Map<String, BigDecimal> budgets = new LinkedHashMap<>();
+            int budgetCount = getInt(position);
+            position += Integer.BYTES;
+            for (int i = 0; i < budgetCount; i++) {
+                String category = categories[getInt(position)];
+                position += Integer.BYTES;
+                String limit = readString(position);
+                position += stringLength(limit);
+                budgets.put(category, new BigDecimal(limit));
+            }
+
+            result.put(
+                    login.toLowerCase(),
+                    new History(
+                            login,
+                            password,
+                            Collections.unmodifiableMap(budgets),
+                            firstRecord,
+                            count));
+        }
+        return result;
+    }
+
+    /** Записывает файл: записи, строки, словарь, каталог, концевик. */
+    private static void writeTo(List<User> users, OutputStream target) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(target);
+        DataOutputStream out = new DataOutputStream(counter);
+
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        List<List<Integer>> orders = new ArrayList<>(users.size());
+        long recordCount = 0;
+
+        // Каждый кошелёк читаем один раз: все разделы файла должны описывать одно состояние
+        List<Wallet.Snapshot> wallets = new ArrayList<>(users.size());
+        for (User user : users) {
+            wallets.add(user.getWallet().snapshot());
+        }
+
+        // Записи: внутри пользователя — по времени, с номером в исходном порядке
+        long heapPosition = 0;
+        for (Wallet.Snapshot wallet : wallets) {
+            for (String category : wallet.getCategoryBudgets().keySet()) {
+                dictionary.putIfAbsent(category, dictionary.size());
+            }
+
+            List<Transaction> transactions = wallet.getTransactions();
+            List<Integer> order = timeOrder(transactions);
+            orders.add(order);
+            for (int sequence : order) {
+                Transaction transaction = transactions.get(sequence);
+                Integer category =
+                        dictionary.computeIfAbsent(
+                                transaction.getCategory(), key -> dictionary.size());
+                writeRecord(out, transaction, category, heapPosition, sequence);
+                heapPosition += heapSize(transaction);
+                recordCount++;
+            }
+        }
+
+        // Строки в том же порядке, что и записи
+        long heapOffset = counter.count;
+        for (int u = 0; u < users.size(); u++) {
+            List<Transaction> transactions = wallets.get(u).getTransactions();
+            for (int sequence : orders.get(u)) {
+                Transaction transaction = transactions.get(sequence);
+                writeString(out, transaction.getId());
+                writeString(out, transaction.getDescription());
+                if (isWide(transaction.getAmount())) {
+                    writeString(out, transaction.getAmount().toString());
+                }
+            }
+        }
+
+        long dictionaryOffset = counter.count;
+        out.writeInt(dictionary.size());
+        for (String category : dictionary.keySet()) {
+            writeString(out, category);
+        }
+
+        long directoryOffset = counter.count;
+        out.writeInt(users.size());
+        long firstRecord = 0;
+        for (int u = 0; u < users.size(); u++) {
+            User user = users.get(u);
+            Wallet.Snapshot wallet = wallets.get(u);
+            int count = orders.get(u).size();
+            writeString(out, user.getLogin());
+            writeString(out, user.getPassword());
+            out.writeLong(firstRecord);
+            out.writeInt(count);
+            firstRecord += count;
+
+            Map<String, BigDecimal> budgets = wallet.getCategoryBudgets();
+            out.writeInt(budgets.size());
+            for (Map.Entry<String, BigDecimal> budget : budgets.entrySet()) {
+                out.writeInt(dictionary.get(budget.getKey()));
+                writeString(out, budget.getValue().toString());
+            }
+        }
+
+        out.writeLong(heapOffset);
+        out.writeLong(dictionaryOffset);
+        out.writeLong(directoryOffset);
+        out.writeLong(recordCount);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.flush();
+    }
+
+    /** Возвращает номера транзакций, упорядоченные по времени (при равенстве — по исходному). */
+    private static List<Integer> timeOrder(List<Transaction> transactions) {
+        List<Integer> order = new ArrayList<>(transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            order.add(i);
+        }
+        order.sort(
+                Comparator.comparing(
+                        (Integer i) -> transactions.get(i).getCreatedAt(),
+                        Comparator.nullsFirst(Comparator.naturalOrder())));
+        return order;
+    }
+
+    private static void writeRecord(
+            DataOutputStream out,
+            Transaction transaction,
+            int category,
+            long heapPosition,
+            int sequence)
+            throws IOException {
+        LocalDateTime createdAt = transaction.getCreatedAt();
+        BigDecimal amount = transaction.getAmount();
+        boolean wide = isWide(amount);
+
+        out.writeLong(createdAt == null ? NO_TIME : createdAt.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(createdAt == null ? 0 : createdAt.getNano());
+        out.writeInt(category);
+        out.writeLong(wide ? 0 : amount.unscaledValue().longValue());
+        out.writeByte(wide ? WIDE_AMOUNT : amount.scale());
+        out.writeByte(transaction.getType().ordinal());
+        out.writeShort(0);
+        out.writeLong(heapPosition);
+        out.writeInt(sequence);
+    }
+
+    /** Сумма не помещается в запись: значение вне long или масштаб вне байта. */
+    private static boolean isWide(BigDecimal amount) {
+        int scale = amount.scale();
+        return amount.unscaledValue().bitLength() >= Long.SIZE
+                || scale <= WIDE_AMOUNT
+                || scale > Byte.MAX_VALUE;
+    }
+
+    /** Размер строк транзакции в области строк. */
+    private static long heapSize(Transaction transaction) {
+        long size = stringLength(transaction.getId()) + stringLength(transaction.getDescription());
+        if (isWide(transaction.getAmount())) {
+            size += stringLength(transaction.getAmount().toString());
+        }
+        return size;
+    }
+
+    private static int stringLength(String value) {
+        return Integer.BYTES + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int compareTime(long seconds, int nano, long otherSeconds, int otherNano) {
+        int compared = Long.compare(seconds, otherSeconds);
+        return compared != 0 ? compared : Integer.compare(nano, otherNano);
+    }
+
+    /** Поток, считающий записанные байты (DataOutputStream.size() ограничен int). */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ru.mifi.financemanager.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import ru.mifi.financemanager.config.AppConfig;
+import ru.mifi.financemanager.domain.User;
+
+/**
+ * Репозиторий только для чтения поверх файла транзакций {@link MappedTransactionFile}.
+ *
+ * <p>Режим хранения {@code mapped}: архив, выгруженный {@link SnapshotConverter}, открывается через
+ * {@link MappedHistoryReader}. При старте читается только каталог пользователей, кошелёк собирается
+ * из отображения файла при входе пользователя и выгружается после выхода.
+ *
+ * <p>Файл не перезаписывается: сохранение уже найденного экземпляра ничего не делает, а попытка
+ * сохранить другого пользователя или удалить пользователя завершается {@link
+ * IllegalStateException}. Сервисы проверяют {@link #isReadOnly()} и не дают менять кошелёк.
+ */
+public class MappedUserRepository implements UserRepository, AutoCloseable {
+
+    private static final String READ_ONLY_MESSAGE = "Хранилище открыто только для чтения";
+
+    private final MappedHistoryReader reader;
+
+    public MappedUserRepository(AppConfig config) {
+        this(config.getDataFilePath());
+    }
+
+    public MappedUserRepository(String filePath) {
+        this.reader = new MappedHistoryReader(filePath);
+    }
+
+    /** Ничего не записывает, если это экземпляр из хранилища; иначе бросает исключение. */
+    @Override
+    public void save(User user) {
+        Optional<User> stored = reader.findByLogin(user.getLogin());
+        if (stored.isEmpty() || stored.get() != user) {
+            throw new IllegalStateException(READ_ONLY_MESSAGE);
+        }
+    }
+
+    @Override
+    public Optional<User> findByLogin(String login) {
+        return reader.findByLogin(login);
+    }
+
+    @Override
+    public boolean existsByLogin(String login) {
+        return reader.existsByLogin(login);
+    }
+
+    /** Возвращает всех пользователей — собирает в память каждого из них. */
+    @Override
+    public List<User> findAll() {
+        List<User> result = new ArrayList<>();
+        for (String login : reader.findAllLogins()) {
+            reader.findByLogin(login).ifPresent(result::add);
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> findAllLogins() {
+        return reader.findAllLogins();
+    }
+
+    @Override
+    public boolean deleteByLogin(String login) {
+        throw new IllegalStateException(READ_ONLY_MESSAGE);
+    }
+
+    /** Ничего не делает: изменений, которые нужно записать, не бывает. */
+    @Override
+    public void flush() {}
+
+    @Override
+    public void load() {
+        reader.load();
+    }
+
+    @Override
+    public void evict(String login) {
+        reader.evict(login);
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    /** Закрывает файл. */
+    @Override
+    public void close() {
+        reader.close();
+    }
+}
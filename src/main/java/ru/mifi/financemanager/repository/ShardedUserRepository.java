@@ -0,0 +1,498 @@
+package ru.mifi.financemanager.repository;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import ru.mifi.financemanager.config.AppConfig;
+import ru.mifi.financemanager.domain.User;
+
+/**
+ * Репозиторий, хранящий пользователей в нескольких файлах-шардах.
+ *
+ * <p>Пользователь попадает в шард по хэшу логина (без учёта регистра). Каждый шард — обычный снимок
+ * {@link JsonUserRepository} в настроенном формате ({@code shard-NNN.json} или {@code
+ * shard-NNN.bin}). {@link #flush()} перезаписывает только шарды, в которых добавлялись или
+ * удалялись пользователи либо есть изменённые кошельки (см. {@link User#isDirty()}), поэтому объём
+ * записи при выходе пользователя пропорционален его данным, а не данным всех пользователей.
+ * Загрузка и запись шардов выполняются параллельно.
+ *
+ * <p>Единый файл данных, если он есть, раскладывается по шардам при первом flush и остаётся
+ * источником данных, пока не записаны все шарды: только после этого в каталоге шардов появляется
+ * отметка {@code migration.done}. Если перенос прервался или часть шардов записать не удалось, при
+ * следующей загрузке данные снова читаются из единого файла, а уже записанные шарды заменяют в нём
+ * своих пользователей. При изменении числа шардов или формата шарды перезаписываются автоматически.
+ *
+ * <p>Запись шардов ждёт завершения единиц {@link #runAtomically(Runnable)}, а изменённые шарды
+ * публикуются как одно целое. Сначала все они пишутся во временные файлы ({@code
+ * shard-NNN.json.pending}), затем файл фиксации {@code commit.intent} со списком шардов, и только
+ * после этого временные файлы заменяют шарды. Если какой-то шард записать не удалось, ни один шард
+ * не меняется. Если процесс упал после записи файла фиксации, при следующей загрузке замена
+ * доводится до конца; без файла фиксации временные файлы отбрасываются. Поэтому перевод между
+ * пользователями разных шардов сохраняется обеими сторонами или не сохраняется вовсе.
+ */
+public class ShardedUserRepository implements UserRepository {
+
+    // Имя файла шарда: shard-007.json или shard-007.bin
+    private static final Pattern SHARD_FILE = Pattern.compile("shard-(\\d+)\\.(json|bin)");
+
+    // Суффикс временного файла шарда, ещё не опубликованного файлом фиксации
+    private static final String PENDING_SUFFIX = ".pending";
+
+    private final Map<String, User> users;
+
+    private final Path shardDirectory;
+
+    // Единый файл данных — источник для первичной миграции
+    private final Path legacyDataFile;
+
+    private final int shardCount;
+
+    private final SnapshotFormat format;
+
+    // Шарды, в которых добавлялись или удалялись пользователи
+    private final Set<Integer> dirtyShards;
+
+    // Файлы, которые больше не используются: номер вне диапазона или прежний формат
+    private final Set<Path> obsoleteFiles;
+
+    // Отметка о том, что единый файл данных полностью разложен по шардам
+    private final Path migrationMarker;
+
+    // Файл фиксации: список шардов, временные файлы которых должны заменить шарды
+    private final Path commitIntent;
+
+    // Перенос из единого файла не завершён: шарды ещё не все записаны
+    private volatile boolean migrating;
+
+    // runAtomically — чтение, запись шардов — запись
+    private final ReentrantReadWriteLock unitLock = new ReentrantReadWriteLock();
+
+    /** Создаёт репозиторий с настройками из AppConfig. */
+    public ShardedUserRepository(AppConfig config) {
+        this(
+                config.getDataFilePath(),
+                config.getShardCount(),
+                SnapshotFormat.fromName(config.getStorageFormat()));
+    }
+
+    /** Создаёт репозиторий с шардами в формате JSON. */
+    public ShardedUserRepository(String dataFilePath, int shardCount) {
+        this(dataFilePath, shardCount, SnapshotFormat.JSON);
+    }
+
+    /**
+     * Создаёт репозиторий; шарды хранятся в каталоге рядом с файлом данных ({@code users.json} ->
+     * {@code users.shards/}).
+     */
+    public ShardedUserRepository(String dataFilePath, int shardCount, SnapshotFormat format) {
+        this.users = new ConcurrentHashMap<>();
+        this.legacyDataFile = Paths.get(dataFilePath);
+        this.shardDirectory = Paths.get(stripExtension(dataFilePath) + ".shards");
+        this.shardCount = Math.max(1, shardCount);
+        this.format = format;
+        this.dirtyShards = ConcurrentHashMap.newKeySet();
+        this.obsoleteFiles = ConcurrentHashMap.newKeySet();
+        this.migrationMarker = shardDirectory.resolve("migration.done");
+        this.commitIntent = shardDirectory.resolve("commit.intent");
+    }
+
+    @Override
+    public void save(User user) {
+        User previous = users.put(user.getLogin().toLowerCase(), user);
+
+        // Повторное сохранение того же объекта ничего не меняет — изменения кошелька видны по
+        // версии
+        if (previous != user) {
+            dirtyShards.add(shardOf(user.getLogin()));
+        }
+    }
+
+    @Override
+    public Optional<User> findByLogin(String login) {
+        return Optional.ofNullable(users.get(login.toLowerCase()));
+    }
+
+    @Override
+    public boolean existsByLogin(String login) {
+        return users.containsKey(login.toLowerCase());
+    }
+
+    @Override
+    public List<User> findAll() {
+        return new ArrayList<>(users.values());
+    }
+
+    @Override
+    public boolean deleteByLogin(String login) {
+        User removed = users.remove(login.toLowerCase());
+        if (removed == null) {
+            return false;
+        }
+        dirtyShards.add(shardOf(login));
+        return true;
+    }
+
+    /** Параллельно перезаписывает изменённые шарды. Без изменений диск не затрагивается. */
+    @Override
+    public void flush() {
+        try {
+            flushOrThrow();
+        } catch (IOException e) {
+            System.err.println("Ошибка сохранения данных: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Перезаписывает изменённые шарды как одно целое; если какой-то шард записать не удалось, не
+     * меняет ни одного и бросает исключение.
+     */
+    @Override
+    public synchronized void flushOrThrow() throws IOException {
+        unitLock.writeLock().lock();
+        try {
+            writeChanges();
+        } finally {
+            unitLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void runAtomically(Runnable unit) {
+        unitLock.readLock().lock();
+        try {
+            unit.run();
+        } finally {
+            unitLock.readLock().unlock();
+        }
+    }
+
+    private void writeChanges() throws IOException {
+        // Публикация, прерванная после записи файла фиксации, сначала доводится до конца
+        if (Files.exists(commitIntent)) {
+            completeCommit();
+        }
+
+        // Снимаем отметки заранее: изменения во время записи попадут в следующий flush
+        Set<Integer> shards = new HashSet<>(dirtyShards);
+        dirtyShards.removeAll(shards);
+        for (User user : users.values()) {
+            if (user.isDirty()) {
+                shards.add(shardOf(user.getLogin()));
+            }
+        }
+
+        if (shards.isEmpty() && obsoleteFiles.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, List<User>> usersByShard = groupByShard(shards);
+        List<String> intent = new ArrayList<>();
+        List<Integer> failed = new ArrayList<>();
+        List<IOException> errors = new ArrayList<>();
+
+        shards.parallelStream()
+                .forEach(
+                        shard -> {
+                            try {
+                                String entry =
+                                        stageShard(
+                                                shard, usersByShard.getOrDefault(shard, List.of()));
+                                synchronized (intent) {
+                                    intent.add(entry);
+                                }
+                            } catch (IOException e) {
+                                synchronized (failed) {
+                                    failed.add(shard);
+                                    errors.add(e);
+                                }
+                                System.err.println(
+                                        "Ошибка сохранения шарда " + shard + ": " + e.getMessage());
+                            }
+                        });
+
+        if (!errors.isEmpty()) {
+            // Ни один шард не опубликован: весь пакет записывается заново при следующем flush
+            dirtyShards.addAll(shards);
+            discardPendingFiles();
+            IOException error =
+                    new IOException("Не удалось сохранить шарды, незаписанные: " + failed);
+            errors.forEach(error::addSuppressed);
+            throw error;
+        }
+
+        if (!intent.isEmpty()) {
+            // Точка фиксации: после записи этого файла пакет считается сохранённым
+            SnapshotWriter.write(
+                    commitIntent,
+                    out -> out.write(String.join("\n", intent).getBytes(StandardCharsets.UTF_8)));
+            try {
+                completeCommit();
+            } catch (IOException e) {
+                dirtyShards.addAll(shards);
+                throw e;
+            }
+        }
+
+        for (Path file : new ArrayList<>(obsoleteFiles)) {
+            try {
+                Files.deleteIfExists(file);
+                obsoleteFiles.remove(file);
+            } catch (IOException e) {
+                errors.add(e);
+                System.err.println("Ошибка удаления шарда " + file + ": " + e.getMessage());
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            IOException error = new IOException("Не удалось удалить устаревшие шарды");
+            errors.forEach(error::addSuppressed);
+            throw error;
+        }
+
+        // Отметка пишется последней: до неё источником данных остаётся единый файл
+        if (migrating) {
+            SnapshotWriter.write(
+                    migrationMarker,
+                    out ->
+                            out.write(
+                                    Integer.toString(shardCount).getBytes(StandardCharsets.UTF_8)));
+            migrating = false;
+        }
+    }
+
+    /**
+     * Заменяет шарды временными файлами по списку из файла фиксации и удаляет его.
+     *
+     * <p>Повторный вызов безопасен: уже перенесённые шарды пропускаются, поэтому прерванную замену
+     * можно довести до конца при следующей загрузке или записи.
+     */
+    private void completeCommit() throws IOException {
+        for (String line : Files.readAllLines(commitIntent, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] parts = line.split(" ", 2);
+            if (parts.length != 2 || !SHARD_FILE.matcher(parts[1]).matches()) {
+                throw new IOException("Повреждён файл фиксации шардов: " + line);
+            }
+
+            Path target = shardDirectory.resolve(parts[1]);
+            switch (parts[0]) {
+                case "move" -> {
+                    Path pending = pendingPath(target);
+                    if (Files.exists(pending)) {
+                        SnapshotWriter.move(pending, target);
+                    }
+                }
+                case "delete" -> Files.deleteIfExists(target);
+                default -> throw new IOException("Повреждён файл фиксации шардов: " + line);
+            }
+        }
+        Files.delete(commitIntent);
+    }
+
+    /**
+     * Доводит до конца публикацию, прерванную после записи файла фиксации, или отбрасывает
+     * временные файлы шардов, если файл фиксации записать не успели.
+     */
+    private void recoverCommit() {
+        try {
+            if (Files.exists(commitIntent)) {
+                completeCommit();
+            } else {
+                discardPendingFiles();
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка завершения записи шардов: " + e.getMessage());
+        }
+    }
+
+    /** Удаляет временные файлы шардов, не попавшие в файл фиксации. */
+    private void discardPendingFiles() throws IOException {
+        if (!Files.isDirectory(shardDirectory)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(shardDirectory, "*" + PENDING_SUFFIX)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Параллельно загружает все шарды; пока перенос из единого файла не завершён — единый файл, а
+     * поверх него уже записанные шарды.
+     */
+    @Override
+    public void load() {
+        users.clear();
+        dirtyShards.clear();
+        obsoleteFiles.clear();
+
+        recoverCommit();
+        migrating = Files.exists(legacyDataFile) && !Files.exists(migrationMarker);
+        if (migrating) {
+            loadLegacyFile();
+        }
+
+        List<Path> shardFiles = listShardFiles();
+
+        // Сначала шарды прежнего формата: если переход на новый формат прервался, его файлы новее
+        String extension = "." + format.getExtension();
+        shardFiles.parallelStream()
+                .filter(file -> !file.toString().endsWith(extension))
+                .forEach(this::loadShard);
+        // Ошибки чтения отдельного шарда сообщает JsonUserRepository
+        shardFiles.parallelStream()
+                .filter(file -> file.toString().endsWith(extension))
+                .forEach(this::loadShard);
+    }
+
+    @Override
+    public long getPendingChangeCount() {
+        long count = dirtyShards.size() + obsoleteFiles.size();
+        for (User user : users.values()) {
+            count += user.getWallet().getUnsavedChangeCount();
+        }
+        return count;
+    }
+
+    /** Возвращает число пользователей в репозитории. */
+    public int count() {
+        return users.size();
+    }
+
+    /** Возвращает номер шарда для логина. */
+    int shardOf(String login) {
+        return Math.floorMod(login.toLowerCase().hashCode(), shardCount);
+    }
+
+    /** Возвращает путь к файлу шарда. */
+    Path shardPath(int shard) {
+        return shardDirectory.resolve(String.format("shard-%03d.%s", shard, format.getExtension()));
+    }
+
+    /** Загружает один файл шарда и проверяет, что пользователи лежат в своих шардах. */
+    private void loadShard(Path file) {
+        Matcher matcher = SHARD_FILE.matcher(file.getFileName().toString());
+        matcher.matches();
+        int fileShard = Integer.parseInt(matcher.group(1));
+        boolean sameFormat = matcher.group(2).equals(format.getExtension());
+
+        JsonUserRepository shard = new JsonUserRepository(file.toString());
+        shard.load();
+        if (migrating && sameFormat && fileShard < shardCount) {
+            // Записанный шард новее единого файла: его пользователи заменяют прочитанных оттуда
+            users.values().removeIf(user -> shardOf(user.getLogin()) == fileShard);
+        }
+        for (User user : shard.findAll()) {
+            users.put(user.getLogin().toLowerCase(), user);
+
+            // Число шардов изменилось — пользователя нужно переложить
+            int targetShard = shardOf(user.getLogin());
+            if (targetShard != fileShard) {
+                dirtyShards.add(targetShard);
+                if (fileShard < shardCount) {
+                    dirtyShards.add(fileShard);
+                }
+            }
+        }
+
+        if (fileShard >= shardCount || !sameFormat) {
+            obsoleteFiles.add(file);
+        }
+        if (fileShard < shardCount && !sameFormat) {
+            dirtyShards.add(fileShard);
+        }
+    }
+
+    /** Загружает данные из единого файла и отмечает все шарды для записи. */
+    private void loadLegacyFile() {
+        JsonUserRepository legacy = new JsonUserRepository(legacyDataFile.toString());
+        legacy.load();
+        for (User user : legacy.findAll()) {
+            users.put(user.getLogin().toLowerCase(), user);
+        }
+        for (int shard = 0; shard < shardCount; shard++) {
+            dirtyShards.add(shard);
+        }
+    }
+
+    /**
+     * Записывает шард во временный файл и возвращает строку файла фиксации для него. Пустой шард
+     * при публикации удаляется; во время переноса он тоже записывается: файл шарда заменяет при
+     * загрузке его пользователей из единого файла.
+     */
+    private String stageShard(int shard, List<User> shardUsers) throws IOException {
+        Path path = shardPath(shard);
+        String name = path.getFileName().toString();
+        if (shardUsers.isEmpty() && !migrating) {
+            return "delete " + name;
+        }
+
+        JsonUserRepository shardRepository =
+                new JsonUserRepository(pendingPath(path).toString(), format);
+        for (User user : shardUsers) {
+            shardRepository.save(user);
+        }
+        shardRepository.writeSnapshot();
+        return "move " + name;
+    }
+
+    /** Возвращает путь к временному файлу шарда. */
+    private static Path pendingPath(Path shardFile) {
+        return shardFile.resolveSibling(shardFile.getFileName() + PENDING_SUFFIX);
+    }
+
+    /** Раскладывает пользователей указанных шардов по номерам шардов. */
+    private Map<Integer, List<User>> groupByShard(Set<Integer> shards) {
+        Map<Integer, List<User>> result = new ConcurrentHashMap<>();
+        for (User user : users.values()) {
+            int shard = shardOf(user.getLogin());
+            if (shards.contains(shard)) {
+                result.computeIfAbsent(shard, key -> new ArrayList<>()).add(user);
+            }
+        }
+        return result;
+    }
+
+    /** Возвращает файлы шардов в каталоге. */
+    private List<Path> listShardFiles() {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(shardDirectory)) {
+            return files;
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(shardDirectory)) {
+            for (Path file : stream) {
+                if (SHARD_FILE.matcher(file.getFileName().toString()).matches()) {
+                    files.add(file);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка чтения каталога шардов: " + e.getMessage());
+        }
+        return files;
+    }
+
+    /** Убирает расширение из имени файла данных. */
+    private static String stripExtension(String path) {
+        int dot = path.lastIndexOf('.');
+        int separator = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        return dot > separator ? path.substring(0, dot) : path;
+    }
+}
@@ -0,0 +1,81 @@
+package ru.mifi.financemanager.repository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import ru.mifi.financemanager.domain.User;
+
+/**
+ * Конвертер снимков пользователей между форматами JSON и двоичным.
+ *
+ * <p>Формат исходного файла определяется автоматически, целевой задаётся явно. Кроме того, снимок
+ * можно выгрузить в файл транзакций для {@link MappedHistoryReader}. Запуск из командной строки:
+ * {@code SnapshotConverter <исходный файл> <целевой файл> <json|binary|mapped>}.
+ *
+ * <p>Исходный файл, который не удалось прочитать или разобрать, не принимается за пустой: конвертер
+ * сообщает об ошибке и целевой файл не пишет.
+ */
+public final class SnapshotConverter {
+
+    private SnapshotConverter() {}
+
+    /**
+     * Преобразует снимок в указанный формат.
+     *
+     * @return число перенесённых пользователей
+     */
+    public static int convert(Path source, Path target, SnapshotFormat format) throws IOException {
+        JsonUserRepository input = load(source);
+        JsonUserRepository output = new JsonUserRepository(target.toString(), format);
+        for (User user : input.findAll()) {
+            output.save(user);
+        }
+        output.writeSnapshot();
+        return output.count();
+    }
+
+    /**
+     * Выгружает снимок в файл транзакций с фиксированной длиной записи ({@link
+     * MappedTransactionFile}).
+     *
+     * @return число выгруженных пользователей
+     */
+    public static int exportMapped(Path source, Path target) throws IOException {
+        JsonUserRepository input = load(source);
+        MappedTransactionFile.write(target, input.findAll());
+        return input.count();
+    }
+
+    /** Загружает снимок в любом поддерживаемом формате; ошибку чтения или разбора бросает. */
+    private static JsonUserRepository load(Path source) throws IOException {
+        if (!Files.exists(source)) {
+            throw new IOException("Файл не найден: " + source);
+        }
+        JsonUserRepository input = new JsonUserRepository(source.toString());
+        input.loadOrThrow();
+        return input;
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.err.println(
+                    "Использование: SnapshotConverter <исходный файл> <целевой файл>"
+                            + " <json|binary|mapped>");
+            System.exit(1);
+        }
+
+        try {
+            Path source = Paths.get(args[0]);
+            Path target = Paths.get(args[1]);
+            int count =
+                    args[2].equalsIgnoreCase("mapped")
+                            ? exportMapped(source, target)
+                            : convert(source, target, SnapshotFormat.fromName(args[2]));
+            System.out.println("Преобразовано пользователей: " + count);
+        } catch (IOException e) {
+            System.err.println("Ошибка преобразования: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ru.mifi.financemanager.repository;
+
+/**
+ * Формат файла снимка пользователей.
+ *
+ * <p>Формат задаёт только способ записи: при загрузке он определяется по содержимому файла, поэтому
+ * смена формата в настройках не требует ручного преобразования данных.
+ */
+public enum SnapshotFormat {
+    /** Читаемый JSON (Gson). */
+    JSON("json"),
+
+    /** Компактный двоичный формат (см. {@link BinarySnapshotCodec}). */
+    BINARY("bin");
+
+    private final String extension;
+
+    SnapshotFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /** Возвращает расширение файлов этого формата (без точки). */
+    public String getExtension() {
+        return extension;
+    }
+
+    /** Определяет формат по названию из настроек; неизвестное название — JSON. */
+    public static SnapshotFormat fromName(String name) {
+        if (name != null && name.trim().equalsIgnoreCase("binary")) {
+            return BINARY;
+        }
+        return JSON;
+    }
+}
@@ -0,0 +1,88 @@
+package ru.mifi.financemanager.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Атомарная запись файла снимка: временный файл, fsync, переименование.
+ *
+ * <p>Содержимое сначала пишется во временный файл в том же каталоге, сбрасывается на диск и только
+ * затем атомарно подменяет целевой файл. При сбое или исключении во время сериализации целевой файл
+ * остаётся в прежнем, целостном состоянии — читатель видит либо старый снимок, либо новый, но
+ * никогда не видит частично записанный.
+ */
+final class SnapshotWriter {
+
+    // Размер буфера записи
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Источник содержимого снимка. */
+    @FunctionalInterface
+    interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private SnapshotWriter() {}
+
+    /** Атомарно записывает содержимое в целевой файл. */
+    static void write(Path target, Content content) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        if (directory != null && !Files.exists(directory)) {
+            Files.createDirectories(directory);
+        }
+
+        // Уникальное имя — параллельные записи не мешают друг другу
+        Path tempFile = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel =
+                    FileChannel.open(
+                            tempFile,
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream out =
+                        new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+                content.writeTo(out);
+                out.flush();
+                channel.force(true);
+            }
+
+            move(tempFile, target);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Вычисляет отпечаток файла снимка (размер и время изменения) или "none", если файла нет.
+     *
+     * <p>Используется сопутствующими файлами (журналом, индексом), чтобы определить, относятся ли
+     * они к текущей версии снимка.
+     */
+    static String fingerprint(Path snapshot) throws IOException {
+        if (!Files.exists(snapshot)) {
+            return "none";
+        }
+        return Files.size(snapshot) + ":" + Files.getLastModifiedTime(snapshot).toMillis();
+    }
+
+    /** Переименовывает файл атомарно, если файловая система это поддерживает. */
+    static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(
+                    source,
+                    target,
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package ru.mifi.financemanager.repository;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 import ru.mifi.financemanager.domain.User;
 
 /** Интерфейс репозитория для работы с пользователями. */
@@ -19,12 +22,116 @@ public interface UserRepository {
     /** Возвращает список всех пользователей. */
     List<User> findAll();
 
+    /**
+     * Возвращает логины всех пользователей.
+     *
+     * <p>Реализации с ленивой загрузкой переопределяют метод, чтобы не загружать кошельки.
+     */
+    default List<String> findAllLogins() {
+        return findAll().stream().map(User::getLogin).collect(Collectors.toList());
+    }
+
     /** Удаляет пользователя по логину. */
     boolean deleteByLogin(String login);
 
-    /** Сохраняет все изменения в постоянное хранилище. */
+    /**
+     * Сохраняет все изменения в постоянное хранилище.
+     *
+     * <p>Ошибка записи печатается, а несохранённые изменения остаются до следующего вызова.
+     */
     void flush();
 
+    /**
+     * Сохраняет изменения, как {@link #flush()}, но сообщает об ошибке записи исключением.
+     *
+     * <p>Нужен тем, кто ведёт учёт записей (например, фоновой записи): по {@link #flush()} нельзя
+     * отличить успешную запись от неудачной. По умолчанию вызывает {@link #flush()}.
+     */
+    default void flushOrThrow() throws IOException {
+        flush();
+    }
+
+    /**
+     * Запрашивает запись изменений и возвращает future, завершающийся после их сохранения.
+     *
+     * <p>Реализации с групповой фиксацией объединяют запросы нескольких вызывающих в одну запись.
+     * По умолчанию выполняет {@link #flushOrThrow()} синхронно; ошибка записи завершает future
+     * исключением.
+     */
+    default CompletableFuture<Void> flushAsync() {
+        try {
+            flushOrThrow();
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Возвращает true, если {@link #flushAsync()} объединяет одновременные запросы в групповую
+     * фиксацию и ожидание его future дёшево.
+     *
+     * <p>Без групповой фиксации future завершается только после полной синхронной записи, поэтому
+     * ждать его в интерактивном потоке не следует. По умолчанию false.
+     */
+    default boolean supportsGroupCommit() {
+        return false;
+    }
+
+    /**
+     * Возвращает число изменений, ещё не записанных {@link #flush()}.
+     *
+     * <p>Используется фоновой записью, чтобы не ждать конца интервала при большом числе изменений.
+     * По умолчанию 0 — репозиторий изменения не считает.
+     */
+    default long getPendingChangeCount() {
+        return 0;
+    }
+
+    /**
+     * Выполняет изменения как одно целое для хранилища.
+     *
+     * <p>Реализации с журналом записывают все изменения, сделанные внутри {@code unit} в текущем
+     * потоке, одной записью: после сбоя восстанавливаются либо все они, либо ни одного. Реализации
+     * со снимками не дают записи снимка начаться, пока {@code unit} выполняется, так что в снимок
+     * изменения попадают тоже целиком. По умолчанию просто выполняет {@code unit}.
+     */
+    default void runAtomically(Runnable unit) {
+        unit.run();
+    }
+
     /** Загружает данные из постоянного хранилища. */
     void load();
+
+    /**
+     * Разрешает выгрузить данные пользователя из памяти (например, после выхода из системы).
+     *
+     * <p>Пользователь, закреплённый через {@link #acquire(String)}, не выгружается, пока
+     * закрепление не снято. По умолчанию ничего не делает: все данные постоянно находятся в памяти.
+     */
+    default void evict(String login) {}
+
+    /**
+     * Находит пользователя и закрепляет его в памяти до {@link #release(String)}.
+     *
+     * <p>Тот, кто меняет кошелёк пользователя, должен держать закрепление: изменения выгруженного
+     * экземпляра хранилище уже не видит. Каждому найденному пользователю соответствует один вызов
+     * release. По умолчанию — {@link #findByLogin(String)}.
+     */
+    default Optional<User> acquire(String login) {
+        return findByLogin(login);
+    }
+
+    /** Снимает закрепление, взятое {@link #acquire(String)}. */
+    default void release(String login) {}
+
+    /**
+     * Возвращает true, если хранилище открыто только для чтения.
+     *
+     * <p>Сервисы проверяют признак до изменения кошелька, чтобы не менять данные, которые нельзя
+     * сохранить. По умолчанию false.
+     */
+    default boolean isReadOnly() {
+        return false;
+    }
 }
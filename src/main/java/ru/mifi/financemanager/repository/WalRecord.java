@@ -0,0 +1,114 @@
+package ru.mifi.financemanager.repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.User;
+
+/**
+ * Запись журнала изменений (write-ahead log).
+ *
+ * <p>Сериализуется в одну компактную строку JSON. Заполняются только поля, нужные для операции, —
+ * Gson не пишет null-поля, поэтому записи получаются короткими.
+ */
+class WalRecord {
+
+    /** Тип операции в журнале. */
+    enum Operation {
+        /** Добавлен или заменён пользователь (хранится целиком). */
+        USER,
+
+        /** Пользователь удалён. */
+        DELETE,
+
+        /** В кошелёк добавлена транзакция. */
+        TRANSACTION,
+
+        /** Изменён или удалён бюджет категории. */
+        BUDGET,
+
+        /** Несколько записей, применяемых как одно целое (например, две стороны перевода). */
+        BATCH
+    }
+
+    private Operation op;
+
+    private String login;
+
+    private User user;
+
+    private Transaction transaction;
+
+    private String category;
+
+    private BigDecimal limit;
+
+    private List<WalRecord> records;
+
+    static WalRecord user(User user) {
+        WalRecord record = new WalRecord();
+        record.op = Operation.USER;
+        record.login = user.getLogin();
+        record.user = user;
+        return record;
+    }
+
+    static WalRecord delete(String login) {
+        WalRecord record = new WalRecord();
+        record.op = Operation.DELETE;
+        record.login = login;
+        return record;
+    }
+
+    static WalRecord transaction(String login, Transaction transaction) {
+        WalRecord record = new WalRecord();
+        record.op = Operation.TRANSACTION;
+        record.login = login;
+        record.transaction = transaction;
+        return record;
+    }
+
+    static WalRecord budget(String login, String category, BigDecimal limit) {
+        WalRecord record = new WalRecord();
+        record.op = Operation.BUDGET;
+        record.login = login;
+        record.category = category;
+        record.limit = limit;
+        return record;
+    }
+
+    static WalRecord batch(List<WalRecord> records) {
+        WalRecord record = new WalRecord();
+        record.op = Operation.BATCH;
+        record.records = records;
+        return record;
+    }
+
+    Operation getOp() {
+        return op;
+    }
+
+    String getLogin() {
+        return login;
+    }
+
+    User getUser() {
+        return user;
+    }
+
+    Transaction getTransaction() {
+        return transaction;
+    }
+
+    String getCategory() {
+        return category;
+    }
+
+    BigDecimal getLimit() {
+        return limit;
+    }
+
+    List<WalRecord> getRecords() {
+        return records;
+    }
+}
@@ -0,0 +1,578 @@
+package ru.mifi.financemanager.repository;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import ru.mifi.financemanager.config.AppConfig;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.User;
+import ru.mifi.financemanager.domain.WalletListener;
+
+/**
+ * Репозиторий с журналом изменений (write-ahead log) поверх JSON-снимка.
+ *
+ * <p>Каждое изменение — новая транзакция, изменение бюджета, регистрация или удаление пользователя
+ * — записывается в журнал одной компактной строкой. {@link #flush()} дописывает в конец журнала
+ * только накопленные изменения, поэтому его стоимость пропорциональна числу изменений, а не объёму
+ * всех данных. Полный снимок перезаписывается лишь при сжатии журнала — когда в нём накопилось
+ * заданное число записей.
+ *
+ * <p>Первая строка журнала — заголовок с отпечатком (размер и время изменения) снимка, поверх
+ * которого журнал ведётся, и числом записей, перенесённых при сжатии (см. {@link #compact()}). Если
+ * процесс упал после записи нового снимка, но до очистки журнала, отпечатки не совпадут и
+ * устаревший журнал будет проигнорирован — записи не применятся дважды. Оборванная последняя строка
+ * (сбой посреди записи) при загрузке отбрасывается. В обоих случаях сразу после загрузки журнал
+ * сжимается, чтобы новые записи не попали в непригодный файл. Изменения, сделанные в {@link
+ * #runAtomically(Runnable)} (например, обе стороны перевода), пишутся одной строкой, поэтому
+ * оборванная запись отбрасывает их целиком.
+ *
+ * <p>Групповая фиксация: {@link #flushAsync()} не пишет на диск сам, а ставит вызывающего в очередь
+ * ожидания. Единственный фоновый поток-фиксатор забирает все накопленные к этому моменту записи
+ * разных пользователей и записывает их одним вызовом write и одним fsync, после чего завершает
+ * futures всех, чьи записи попали в пакет. При конкурентной записи число fsync растёт не с числом
+ * вызывающих, а с числом пакетов.
+ */
+public class WalUserRepository extends JsonUserRepository {
+
+    private final Gson walGson;
+
+    private final Path walPath;
+
+    private final int compactionThreshold;
+
+    // Строки журнала, ещё не записанные на диск
+    private final List<String> pendingRecords;
+
+    // Записи группы runAtomically, открытой в текущем потоке
+    private final ThreadLocal<List<WalRecord>> openUnit;
+
+    // Число записей в файле журнала (для принятия решения о сжатии)
+    private int walRecordCount;
+
+    // Номер последней записи, поставленной в очередь, и последней сохранённой (под pendingRecords)
+    private long enqueuedSequence;
+
+    private long durableSequence;
+
+    // Ожидающие фиксации (под pendingRecords)
+    private final List<PendingCommit> waiters;
+
+    // Поток-фиксатор групповой записи; создаётся по требованию и завершается при простое
+    private final ExecutorService committer;
+
+    private final AtomicBoolean commitScheduled;
+
+    // Число выполненных пакетных записей в журнал
+    private final AtomicLong commitCount;
+
+    /** Ожидание фиксации записей до номера sequence включительно. */
+    private static final class PendingCommit {
+        private final long sequence;
+        private final CompletableFuture<Void> future;
+
+        private PendingCommit(long sequence, CompletableFuture<Void> future) {
+            this.sequence = sequence;
+            this.future = future;
+        }
+    }
+
+    /** Создаёт репозиторий с настройками из AppConfig. */
+    public WalUserRepository(AppConfig config) {
+        this(
+                config.getDataFilePath(),
+                config.getWalCompactionThreshold(),
+                SnapshotFormat.fromName(config.getStorageFormat()));
+    }
+
+    /** Создаёт репозиторий с указанным файлом снимка и порогом сжатия журнала. */
+    public WalUserRepository(String dataFilePath, int compactionThreshold) {
+        this(dataFilePath, compactionThreshold, SnapshotFormat.JSON);
+    }
+
+    /** Создаёт репозиторий, записывающий снимок при сжатии в указанном формате. */
+    public WalUserRepository(String dataFilePath, int compactionThreshold, SnapshotFormat format) {
+        super(dataFilePath, format);
+        this.walGson =
+                new GsonBuilder()
+                        .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
+                        .registerTypeAdapterFactory(new WalletAdapterFactory())
+                        .create();
+        this.walPath = Path.of(dataFilePath + ".wal");
+        this.compactionThreshold = Math.max(1, compactionThreshold);
+        this.pendingRecords = new ArrayList<>();
+        this.openUnit = new ThreadLocal<>();
+        this.walRecordCount = 0;
+        this.waiters = new ArrayList<>();
+        this.commitScheduled = new AtomicBoolean();
+        this.commitCount = new AtomicLong();
+        this.committer =
+                new ThreadPoolExecutor(
+                        0,
+                        1,
+                        30,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(),
+                        task -> {
+                            Thread thread = new Thread(task, "wal-committer");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    @Override
+    public void save(User user) {
+        Optional<User> existing = findByLogin(user.getLogin());
+        super.save(user);
+
+        // Повторное сохранение того же объекта не меняет данных — изменения уже в журнале
+        if (existing.isEmpty() || existing.get() != user) {
+            append(WalRecord.user(user));
+            attach(user);
+        }
+    }
+
+    /**
+     * Записи изменений, сделанных внутри unit, ставятся в очередь одной строкой журнала.
+     *
+     * <p>Unit выполняется под блокировкой репозитория (см. {@link
+     * JsonUserRepository#runAtomically(Runnable)}), поэтому снимок при сжатии журнала не застаёт
+     * его на середине.
+     */
+    @Override
+    public void runAtomically(Runnable unit) {
+        if (openUnit.get() != null) {
+            // Вложенный вызов — записи попадут во внешнюю группу
+            unit.run();
+            return;
+        }
+
+        super.runAtomically(
+                () -> {
+                    List<WalRecord> records = new ArrayList<>();
+                    openUnit.set(records);
+                    try {
+                        unit.run();
+                    } finally {
+                        openUnit.remove();
+                        // Даже если unit прервался, уже применённые изменения должны попасть в
+                        // журнал
+                        if (records.size() == 1) {
+                            append(records.get(0));
+                        } else if (!records.isEmpty()) {
+                            append(WalRecord.batch(records));
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public boolean deleteByLogin(String login) {
+        Optional<User> existing = findByLogin(login);
+        boolean deleted = super.deleteByLogin(login);
+        if (deleted) {
+            existing.get().getWallet().setListener(null);
+            append(WalRecord.delete(login));
+        }
+        return deleted;
+    }
+
+    /**
+     * Дописывает накопленные изменения в журнал и при необходимости сжимает его.
+     *
+     * <p>Если изменений не было, диск не затрагивается.
+     */
+    @Override
+    public void flush() {
+        try {
+            flushOrThrow();
+        } catch (IOException e) {
+            System.err.println("Ошибка записи журнала: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void flushOrThrow() throws IOException {
+        try {
+            writePending();
+        } catch (IOException e) {
+            failWaiters(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Ставит вызывающего в очередь групповой фиксации.
+     *
+     * @return future, завершающийся, когда все изменения, сделанные до вызова, записаны на диск
+     */
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (pendingRecords) {
+            if (enqueuedSequence <= durableSequence) {
+                return CompletableFuture.completedFuture(null);
+            }
+            waiters.add(new PendingCommit(enqueuedSequence, future));
+        }
+
+        if (commitScheduled.compareAndSet(false, true)) {
+            committer.execute(this::runCommitter);
+        }
+        return future;
+    }
+
+    @Override
+    public boolean supportsGroupCommit() {
+        return true;
+    }
+
+    /**
+     * Записывает полный снимок и начинает новый журнал.
+     *
+     * <p>Снимок пишется без блокировки очереди: кошельки читаются под своими блокировками, а
+     * слушатели кошельков ставят записи в очередь под блокировкой кошелька, так что ожидание
+     * очереди во время чтения кошельков привело бы к взаимной блокировке. Записи, поставленные в
+     * очередь до начала сжатия, заведомо есть в снимке и отбрасываются. Записи, появившиеся во
+     * время записи снимка, переносятся в новый журнал; часть из них может уже быть в снимке. Их
+     * число пишется в заголовок журнала, и при восстановлении в этих первых записях повторные
+     * транзакции пропускаются (остальные операции идемпотентны).
+     */
+    public synchronized void compact() throws IOException {
+        int covered;
+        long upTo;
+        synchronized (pendingRecords) {
+            covered = pendingRecords.size();
+            upTo = enqueuedSequence;
+        }
+
+        writeSnapshot();
+
+        synchronized (pendingRecords) {
+            pendingRecords.subList(0, covered).clear();
+            // Перенесённые записи окажутся первыми строками нового журнала
+            startNewLog(pendingRecords.size());
+            walRecordCount = 0;
+        }
+        markDurable(upTo);
+    }
+
+    @Override
+    public void load() {
+        super.load();
+        walRecordCount = 0;
+
+        if (Files.exists(walPath)) {
+            try {
+                if (!replayLog()) {
+                    compact();
+                }
+            } catch (IOException e) {
+                System.err.println("Ошибка чтения журнала: " + e.getMessage());
+            }
+        }
+
+        for (User user : findAll()) {
+            attach(user);
+        }
+    }
+
+    /** Возвращает число записей, ещё не дописанных в журнал. */
+    @Override
+    public long getPendingChangeCount() {
+        synchronized (pendingRecords) {
+            return pendingRecords.size();
+        }
+    }
+
+    /** Возвращает число пакетных записей в журнал (каждая — один write и один fsync). */
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    /** Возвращает число записей в текущем файле журнала. */
+    public int getWalRecordCount() {
+        return walRecordCount;
+    }
+
+    /** Дописывает очередь в журнал одним пакетом и при необходимости сжимает журнал. */
+    private void writePending() throws IOException {
+        List<String> batch;
+        long upTo;
+        synchronized (pendingRecords) {
+            if (pendingRecords.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pendingRecords);
+            pendingRecords.clear();
+            upTo = enqueuedSequence;
+        }
+
+        try {
+            if (!Files.exists(walPath)) {
+                startNewLog(0);
+            }
+            appendToLog(batch);
+        } catch (IOException e) {
+            // Возвращаем записи в очередь, чтобы не потерять их при следующем flush
+            synchronized (pendingRecords) {
+                pendingRecords.addAll(0, batch);
+            }
+            throw e;
+        }
+        walRecordCount += batch.size();
+        commitCount.incrementAndGet();
+        markDurable(upTo);
+
+        if (walRecordCount >= compactionThreshold) {
+            // Записи уже в журнале: ошибка сжатия не должна возвращать их в очередь
+            try {
+                compact();
+            } catch (IOException e) {
+                System.err.println("Ошибка сжатия журнала: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Цикл фиксатора: пишет пакеты, пока есть ожидающие. */
+    private void runCommitter() {
+        boolean more;
+        do {
+            // Сбрасываем флаг до записи: новый ожидающий либо попадёт в этот пакет, либо
+            // запустит следующий проход
+            commitScheduled.set(false);
+            flush();
+            synchronized (pendingRecords) {
+                more = !waiters.isEmpty();
+            }
+        } while (more && commitScheduled.compareAndSet(false, true));
+    }
+
+    /** Отмечает записи до upTo сохранёнными и завершает ожидания. */
+    private void markDurable(long upTo) {
+        List<PendingCommit> completed = new ArrayList<>();
+        synchronized (pendingRecords) {
+            durableSequence = Math.max(durableSequence, upTo);
+            waiters.removeIf(
+                    waiter -> {
+                        if (waiter.sequence <= durableSequence) {
+                            completed.add(waiter);
+                            return true;
+                        }
+                        return false;
+                    });
+        }
+        for (PendingCommit waiter : completed) {
+            waiter.future.complete(null);
+        }
+    }
+
+    /** Завершает все ожидания ошибкой (записи остаются в очереди до следующего flush). */
+    private void failWaiters(IOException error) {
+        List<PendingCommit> failed;
+        synchronized (pendingRecords) {
+            failed = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        for (PendingCommit waiter : failed) {
+            waiter.future.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Применяет записи журнала к загруженному снимку.
+     *
+     * @return false, если журнал устарел или оборван и в него нельзя продолжать дописывать
+     */
+    private boolean replayLog() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(walPath, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            String[] parts = header != null ? header.split(" ", 2) : new String[] {""};
+            if (header == null || !parts[0].equals(snapshotFingerprint())) {
+                // Журнал относится к предыдущему снимку — его записи уже в снимке
+                return false;
+            }
+
+            // Число первых записей, которые могли попасть и в снимок (перенесены при сжатии)
+            int overlap;
+            try {
+                overlap = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+
+            // Идентификаторы транзакций пользователей, встреченных в перенесённых записях
+            Map<String, Set<String>> knownIds = new HashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                WalRecord record;
+                try {
+                    record = walGson.fromJson(line, WalRecord.class);
+                } catch (JsonParseException e) {
+                    // Оборванная запись в конце журнала — дальше данных нет
+                    return false;
+                }
+                if (record == null || record.getOp() == null) {
+                    return false;
+                }
+                apply(record, walRecordCount < overlap ? knownIds : null);
+                walRecordCount++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Применяет одну запись журнала (слушатели в этот момент не подключены).
+     *
+     * <p>Для записей, перенесённых при сжатии (knownIds не null), транзакция, которая уже есть в
+     * кошельке, пропускается. Остальные записи применяются как есть: транзакции с одинаковым
+     * идентификатором (например, повторный импорт) допустимы.
+     */
+    private void apply(WalRecord record, Map<String, Set<String>> knownIds) {
+        String key = record.getLogin() != null ? record.getLogin().toLowerCase() : null;
+        switch (record.getOp()) {
+            case USER -> {
+                User user = record.getUser();
+                user.getWallet().recalculateAggregates();
+                super.save(user);
+                if (knownIds != null) {
+                    knownIds.remove(key);
+                }
+            }
+            case DELETE -> {
+                super.deleteByLogin(record.getLogin());
+                if (knownIds != null) {
+                    knownIds.remove(key);
+                }
+            }
+            case TRANSACTION ->
+                    findByLogin(record.getLogin())
+                            .ifPresent(
+                                    user -> {
+                                        Transaction transaction = record.getTransaction();
+                                        if (knownIds == null
+                                                || knownIds.computeIfAbsent(
+                                                                key, login -> transactionIds(user))
+                                                        .add(transaction.getId())) {
+                                            user.getWallet().addTransaction(transaction);
+                                        }
+                                    });
+            case BATCH -> {
+                for (WalRecord nested : record.getRecords()) {
+                    apply(nested, knownIds);
+                }
+            }
+            case BUDGET ->
+                    findByLogin(record.getLogin())
+                            .ifPresent(
+                                    user -> {
+                                        if (record.getLimit() == null) {
+                                            user.getWallet().removeBudget(record.getCategory());
+                                        } else {
+                                            user.getWallet()
+                                                    .setBudget(
+                                                            record.getCategory(),
+                                                            record.getLimit());
+                                        }
+                                    });
+        }
+    }
+
+    /** Собирает идентификаторы транзакций пользователя. */
+    private static Set<String> transactionIds(User user) {
+        Set<String> ids = new HashSet<>();
+        for (Transaction transaction : user.getWallet().getTransactions()) {
+            ids.add(transaction.getId());
+        }
+        return ids;
+    }
+
+    /** Подключает к кошельку пользователя запись изменений в журнал. */
+    private void attach(User user) {
+        String login = user.getLogin();
+        user.getWallet()
+                .setListener(
+                        new WalletListener() {
+                            @Override
+                            public void onTransactionAdded(Transaction transaction) {
+                                append(WalRecord.transaction(login, transaction));
+                            }
+
+                            @Override
+                            public void onBudgetChanged(String category, BigDecimal limit) {
+                                append(WalRecord.budget(login, category, limit));
+                            }
+                        });
+    }
+
+    /** Ставит запись в очередь. Сериализуем сразу, чтобы зафиксировать состояние на этот момент. */
+    private void append(WalRecord record) {
+        List<WalRecord> unit = openUnit.get();
+        if (unit != null) {
+            unit.add(record);
+            return;
+        }
+
+        String line = walGson.toJson(record);
+        synchronized (pendingRecords) {
+            pendingRecords.add(line);
+            enqueuedSequence++;
+        }
+    }
+
+    /** Дописывает строки в конец журнала одной записью и сбрасывает их на диск. */
+    private void appendToLog(List<String> lines) throws IOException {
+        StringBuilder chunk = new StringBuilder();
+        for (String line : lines) {
+            chunk.append(line).append('\n');
+        }
+
+        try (FileChannel channel =
+                FileChannel.open(walPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(chunk.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Атомарно заменяет журнал пустым, привязанным к текущему снимку.
+     *
+     * @param overlap число записей, перенесённых при сжатии (они будут дописаны первыми)
+     */
+    private void startNewLog(int overlap) throws IOException {
+        String header = snapshotFingerprint() + (overlap > 0 ? " " + overlap : "") + "\n";
+        SnapshotWriter.write(walPath, out -> out.write(header.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** Вычисляет отпечаток текущего файла снимка. */
+    private String snapshotFingerprint() throws IOException {
+        return SnapshotWriter.fingerprint(getDataFilePath());
+    }
+}
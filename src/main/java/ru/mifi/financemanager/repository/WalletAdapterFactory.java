@@ -0,0 +1,59 @@
+package ru.mifi.financemanager.repository;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.Wallet;
+
+/**
+ * Сериализует кошелёк из {@link Wallet#snapshot()}: кошелёк может меняться другим потоком во время
+ * записи. Формат JSON тот же, что у полей кошелька, чтение остаётся стандартным.
+ */
+class WalletAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (type.getRawType() != Wallet.class) {
+            return null;
+        }
+
+        TypeAdapter<Wallet> reflective = gson.getDelegateAdapter(this, TypeToken.get(Wallet.class));
+        TypeAdapter<List<Transaction>> transactions =
+                gson.getAdapter(new TypeToken<List<Transaction>>() {});
+        TypeAdapter<Map<String, BigDecimal>> budgets =
+                gson.getAdapter(new TypeToken<Map<String, BigDecimal>>() {});
+
+        return (TypeAdapter<T>)
+                new TypeAdapter<Wallet>() {
+                    @Override
+                    public void write(JsonWriter out, Wallet wallet) throws IOException {
+                        if (wallet == null) {
+                            out.nullValue();
+                            return;
+                        }
+
+                        Wallet.Snapshot snapshot = wallet.snapshot();
+                        out.beginObject();
+                        out.name("transactions");
+                        transactions.write(out, snapshot.getTransactions());
+                        out.name("categoryBudgets");
+                        budgets.write(out, snapshot.getCategoryBudgets());
+                        out.endObject();
+                    }
+
+                    @Override
+                    public Wallet read(JsonReader in) throws IOException {
+                        return reflective.read(in);
+                    }
+                };
+    }
+}
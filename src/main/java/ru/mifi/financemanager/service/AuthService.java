@@ -12,8 +12,12 @@ import ru.mifi.financemanager.domain.User;
  * <ul>
  *   <li>Регистрации новых пользователей
  *   <li>Аутентификации (вход в систему)
- *   <li>Управления текущей сессией
+ *   <li>Управления сессиями
  * </ul>
+ *
+ * <p>Сессий может быть много одновременно: каждая открывается через {@link #openSession} и
+ * идентифицируется токеном. Методы без токена ({@link #login}, {@link #logout}, {@link
+ * #getCurrentUser()}) работают с сессией по умолчанию — ею пользуется консольное приложение.
  */
 public interface AuthService {
 
@@ -26,6 +30,15 @@ public interface AuthService {
     /** Завершает сессию текущего пользователя. */
     void logout();
 
+    /** Аутентифицирует пользователя и открывает для него новую сессию. */
+    Session openSession(String login, String password);
+
+    /** Находит открытую сессию по токену. */
+    Optional<Session> findSession(String token);
+
+    /** Закрывает сессию: сохраняет изменения пользователя и делает токен недействительным. */
+    void closeSession(String token);
+
     /** Возвращает текущего аутентифицированного пользователя. */
     Optional<User> getCurrentUser();
 
@@ -38,6 +51,9 @@ public interface AuthService {
     /** Возвращает список всех зарегистрированных пользователей. */
     List<User> getAllUsers();
 
+    /** Возвращает логины всех пользователей (без загрузки их кошельков). */
+    List<String> getAllLogins();
+
     /** Сохраняет все изменения пользователей. */
     void saveAll();
 }
@@ -1,7 +1,11 @@
 package ru.mifi.financemanager.service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import ru.mifi.financemanager.domain.User;
 import ru.mifi.financemanager.exception.InvalidCredentialsException;
 import ru.mifi.financemanager.exception.ValidationException;
@@ -15,24 +19,40 @@ import ru.mifi.financemanager.repository.UserRepository;
  * <ul>
  *   <li>Регистрация с валидацией уникальности логина
  *   <li>Аутентификация с проверкой пароля
- *   <li>Управление текущей сессией
+ *   <li>Управление сессиями
  * </ul>
+ *
+ * <p>Открытые сессии хранятся в ConcurrentHashMap по токену: поиск сессии не берёт блокировок, а
+ * открытие и закрытие сессий разных пользователей не конкурируют между собой.
  */
 public class AuthServiceImpl implements AuthService {
 
     private final UserRepository userRepository;
 
-    private User currentUser;
+    // Открытые сессии: токен -> сессия
+    private final Map<String, Session> sessions;
+
+    // Число открытых сессий по логину (в нижнем регистре)
+    private final Map<String, Integer> sessionCounts;
+
+    // Сессия по умолчанию (консольное приложение)
+    private volatile Session currentSession;
 
     /** Создаёт сервис аутентификации с указанным репозиторием. */
     public AuthServiceImpl(UserRepository userRepository) {
         this.userRepository = userRepository;
-        this.currentUser = null;
+        this.sessions = new ConcurrentHashMap<>();
+        this.sessionCounts = new ConcurrentHashMap<>();
+        this.currentSession = null;
     }
 
     /** Регистрирует нового пользователя. */
     @Override
     public User register(String login, String password) {
+        if (userRepository.isReadOnly()) {
+            throw new ValidationException("Хранилище открыто только для чтения");
+        }
+
         // Валидация логина
         if (login == null || login.trim().isEmpty()) {
             throw new ValidationException("логин", "не может быть пустым");
@@ -58,9 +78,72 @@ public class AuthServiceImpl implements AuthService {
         return newUser;
     }
 
-    /** Выполняет вход пользователя в систему. */
+    /** Выполняет вход пользователя в систему (сессия по умолчанию). */
     @Override
     public User login(String login, String password) {
+        Session session = openSession(login, password);
+
+        // Повторный вход заменяет прежнюю сессию по умолчанию
+        Session previous = currentSession;
+        currentSession = session;
+        if (previous != null) {
+            closeSession(previous.getToken());
+        }
+
+        return session.getUser();
+    }
+
+    /** Аутентифицирует пользователя и открывает новую сессию. */
+    @Override
+    public Session openSession(String login, String password) {
+        // Проверка пароля (и загрузка кошелька) идёт вне счётчика, чтобы не держать его. Выгрузка
+        // при закрытии последней сессии не отключит пользователя: authenticate закрепляет его в
+        // хранилище, и выгрузка закреплённого откладывается до снятия закрепления
+        User user = authenticate(login, password);
+        sessionCounts.compute(
+                user.getLogin().toLowerCase(), (key, count) -> count == null ? 1 : count + 1);
+
+        Session session = new Session(UUID.randomUUID().toString(), user);
+        sessions.put(session.getToken(), session);
+        return session;
+    }
+
+    @Override
+    public Optional<Session> findSession(String token) {
+        return token == null ? Optional.empty() : Optional.ofNullable(sessions.get(token));
+    }
+
+    /** Закрывает сессию и сохраняет изменения её пользователя. */
+    @Override
+    public void closeSession(String token) {
+        Session session = token == null ? null : sessions.remove(token);
+        if (session == null) {
+            return;
+        }
+
+        User user = session.getUser();
+        userRepository.save(user);
+        awaitFlush();
+        userRepository.release(user.getLogin());
+
+        // Кошелёк можно выгрузить, только если у пользователя не осталось других сессий. Вход,
+        // успевший закрепить пользователя, откладывает выгрузку; опоздавший получает новую копию
+        sessionCounts.computeIfPresent(
+                user.getLogin().toLowerCase(),
+                (key, count) -> {
+                    if (count > 1) {
+                        return count - 1;
+                    }
+                    userRepository.evict(user.getLogin());
+                    return null;
+                });
+    }
+
+    /**
+     * Проверяет логин и пароль и возвращает пользователя, закреплённого в хранилище на время сессии
+     * (см. {@link UserRepository#acquire(String)}).
+     */
+    private User authenticate(String login, String password) {
         if (login == null || login.trim().isEmpty()) {
             throw new InvalidCredentialsException("Логин не может быть пустым");
         }
@@ -69,7 +152,7 @@ public class AuthServiceImpl implements AuthService {
             throw new InvalidCredentialsException("Пароль не может быть пустым");
         }
 
-        Optional<User> userOpt = userRepository.findByLogin(login.trim());
+        Optional<User> userOpt = userRepository.acquire(login.trim());
 
         if (userOpt.isEmpty()) {
             throw new InvalidCredentialsException();
@@ -78,32 +161,32 @@ public class AuthServiceImpl implements AuthService {
         User user = userOpt.get();
 
         if (!user.checkPassword(password)) {
+            userRepository.release(user.getLogin());
             throw new InvalidCredentialsException();
         }
 
-        this.currentUser = user;
-
         return user;
     }
 
-    /** Завершает сессию текущего пользователя. */
+    /** Завершает сессию по умолчанию. */
     @Override
     public void logout() {
-        if (currentUser != null) {
-            userRepository.save(currentUser);
-            userRepository.flush();
-            currentUser = null;
+        Session session = currentSession;
+        if (session != null) {
+            currentSession = null;
+            closeSession(session.getToken());
         }
     }
 
     @Override
     public Optional<User> getCurrentUser() {
-        return Optional.ofNullable(currentUser);
+        Session session = currentSession;
+        return session != null ? Optional.of(session.getUser()) : Optional.empty();
     }
 
     @Override
     public boolean isAuthenticated() {
-        return currentUser != null;
+        return currentSession != null;
     }
 
     /** Находит пользователя по логину для переводов. */
@@ -117,12 +200,37 @@ public class AuthServiceImpl implements AuthService {
         return userRepository.findAll();
     }
 
+    @Override
+    public List<String> getAllLogins() {
+        return userRepository.findAllLogins();
+    }
+
     /** Сохраняет все изменения в репозиторий. */
     @Override
     public void saveAll() {
-        if (currentUser != null) {
-            userRepository.save(currentUser);
+        for (Session session : sessions.values()) {
+            userRepository.save(session.getUser());
+        }
+        awaitFlush();
+    }
+
+    /**
+     * Сохраняет изменения, не задерживая пользователя полной записью снимка.
+     *
+     * <p>Журнал с групповой фиксацией объединяет одновременные ожидания в одну короткую запись — её
+     * результат дожидаемся. Остальным репозиториям передаётся {@link UserRepository#flush()}: при
+     * фоновой записи он лишь ставит запись в очередь и сразу возвращает управление. Ошибка записи
+     * печатается, изменения остаются несохранёнными до следующей записи.
+     */
+    private void awaitFlush() {
+        if (!userRepository.supportsGroupCommit()) {
+            userRepository.flush();
+            return;
+        }
+        try {
+            userRepository.flushAsync().join();
+        } catch (CompletionException e) {
+            System.err.println("Ошибка сохранения данных: " + e.getCause().getMessage());
         }
-        userRepository.flush();
     }
 }
@@ -2,9 +2,11 @@ package ru.mifi.financemanager.service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionSummary;
 import ru.mifi.financemanager.domain.User;
 
 /**
@@ -18,20 +20,50 @@ import ru.mifi.financemanager.domain.User;
  *   <li>Получение статистики и аналитики
  *   <li>Переводы между пользователями
  * </ul>
+ *
+ * <p>Операции выполняются от имени пользователя сессии по умолчанию; для работы от имени конкретной
+ * сессии используется {@link #forSession(String)}.
  */
 public interface FinanceService {
+    /**
+     * Возвращает сервис, выполняющий операции от имени пользователя указанной сессии.
+     *
+     * <p>Токен проверяется при каждой операции: после закрытия сессии операции отклоняются.
+     */
+    FinanceService forSession(String token);
+
     /** Добавляет доход в кошелёк текущего пользователя. */
     Transaction addIncome(BigDecimal amount, String category, String description);
 
     /** Добавляет расход в кошелёк текущего пользователя. */
     Transaction addExpense(BigDecimal amount, String category, String description);
 
+    /**
+     * Добавляет пакет готовых транзакций в кошелёк текущего пользователя (например, при импорте).
+     *
+     * <p>Пакет проверяется целиком до изменений и добавляется одним шагом. Бюджеты проверяются один
+     * раз на каждую затронутую категорию расходов, баланс — один раз в конце.
+     *
+     * @return число добавленных транзакций
+     */
+    int addTransactions(List<Transaction> transactions);
+
     /** Возвращает все транзакции текущего пользователя. */
     List<Transaction> getAllTransactions();
 
+    /** Обходит транзакции текущего пользователя по порядку, не копируя историю целиком. */
+    Iterator<Transaction> iterateTransactions();
+
     /** Возвращает транзакции за указанный период. */
     List<Transaction> getTransactionsByPeriod(LocalDateTime from, LocalDateTime to);
 
+    /**
+     * Возвращает сводку доходов и расходов за период (границы включительно).
+     *
+     * <p>Считается по заранее накопленным дневным и месячным итогам, без выборки транзакций.
+     */
+    TransactionSummary getPeriodSummary(LocalDateTime from, LocalDateTime to);
+
     /** Возвращает транзакции по категории. */
     List<Transaction> getTransactionsByCategory(String category);
 
@@ -56,6 +88,14 @@ public interface FinanceService {
     /** Возвращает текущий баланс. */
     BigDecimal getBalance();
 
+    /**
+     * Возвращает снимок статистики текущего пользователя: общие суммы и разбивку по категориям.
+     *
+     * <p>Предпочтительнее отдельных вызовов {@link #getExpensesByCategory()} и {@link
+     * #getIncomesByCategory()}, если на одном экране нужны обе разбивки.
+     */
+    TransactionSummary getStatistics();
+
     /** Возвращает статистику по категориям расходов. */
     Map<String, BigDecimal> getExpensesByCategory();
 
@@ -70,4 +110,14 @@ public interface FinanceService {
 
     /** Выполняет перевод между пользователями. */
     boolean transfer(User toUser, BigDecimal amount, String description);
+
+    /**
+     * Выполняет пакет переводов от текущего пользователя нескольким получателям.
+     *
+     * <p>Пакет проверяется целиком и выполняется полностью или не выполняется вовсе: если общей
+     * суммы не хватает, ни один перевод не проводится.
+     *
+     * @return общая сумма списания
+     */
+    BigDecimal transferBatch(List<TransferRequest> transfers, String description);
 }
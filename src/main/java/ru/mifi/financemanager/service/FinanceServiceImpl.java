@@ -2,14 +2,22 @@ package ru.mifi.financemanager.service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionSummary;
 import ru.mifi.financemanager.domain.TransactionType;
 import ru.mifi.financemanager.domain.User;
 import ru.mifi.financemanager.domain.Wallet;
 import ru.mifi.financemanager.exception.ValidationException;
+import ru.mifi.financemanager.repository.UserRepository;
 
 /**
  * Реализация сервиса финансовых операций.
@@ -22,19 +30,66 @@ public class FinanceServiceImpl implements FinanceService {
 
     private final NotificationService notificationService;
 
-    /** Создаёт сервис финансовых операций. */
+    // Хранилище: изменения двух кошельков при переводе записываются как одно целое
+    private final UserRepository userRepository;
+
+    // Источник пользователя, от имени которого выполняются операции
+    private final Supplier<Optional<User>> userSource;
+
+    /** Создаёт сервис финансовых операций для сессии по умолчанию. */
     public FinanceServiceImpl(AuthService authService, NotificationService notificationService) {
+        this(authService, notificationService, null);
+    }
+
+    /**
+     * Создаёт сервис, записывающий переводы в хранилище одной операцией.
+     *
+     * <p>Без хранилища (null) перевод атомарен только в памяти.
+     */
+    public FinanceServiceImpl(
+            AuthService authService,
+            NotificationService notificationService,
+            UserRepository userRepository) {
+        this(authService, notificationService, userRepository, authService::getCurrentUser);
+    }
+
+    private FinanceServiceImpl(
+            AuthService authService,
+            NotificationService notificationService,
+            UserRepository userRepository,
+            Supplier<Optional<User>> userSource) {
         this.authService = authService;
         this.notificationService = notificationService;
+        this.userRepository = userRepository;
+        this.userSource = userSource;
+    }
+
+    @Override
+    public FinanceService forSession(String token) {
+        return new FinanceServiceImpl(
+                authService,
+                notificationService,
+                userRepository,
+                () -> authService.findSession(token).map(Session::getUser));
+    }
+
+    /** Возвращает пользователя, от имени которого выполняется операция. */
+    private User getCurrentUser() {
+        return userSource
+                .get()
+                .orElseThrow(() -> new ValidationException("Пользователь не авторизован"));
     }
 
     /** Возвращает кошелёк текущего пользователя. */
     private Wallet getCurrentWallet() {
-        User user =
-                authService
-                        .getCurrentUser()
-                        .orElseThrow(() -> new ValidationException("Пользователь не авторизован"));
-        return user.getWallet();
+        return getCurrentUser().getWallet();
+    }
+
+    /** Запрещает изменения, если хранилище открыто только для чтения. */
+    private void requireWritable() {
+        if (userRepository != null && userRepository.isReadOnly()) {
+            throw new ValidationException("Хранилище открыто только для чтения");
+        }
     }
 
     /** Валидирует сумму операции. */
@@ -57,6 +112,8 @@ public class FinanceServiceImpl implements FinanceService {
     /** Добавляет доход в кошелёк текущего пользователя. */
     @Override
     public Transaction addIncome(BigDecimal amount, String category, String description) {
+        requireWritable();
+
         // Валидация входных данных
         validateAmount(amount);
         validateCategory(category);
@@ -78,6 +135,7 @@ public class FinanceServiceImpl implements FinanceService {
     /** Добавляет расход в кошелёк текущего пользователя. */
     @Override
     public Transaction addExpense(BigDecimal amount, String category, String description) {
+        requireWritable();
         validateAmount(amount);
         validateCategory(category);
 
@@ -102,6 +160,48 @@ public class FinanceServiceImpl implements FinanceService {
         return transaction;
     }
 
+    /** Добавляет пакет транзакций и проверяет бюджеты один раз по каждой категории. */
+    @Override
+    public int addTransactions(List<Transaction> transactions) {
+        requireWritable();
+        if (transactions == null) {
+            throw new ValidationException("транзакции", "не может быть пустым");
+        }
+
+        // Проверяем весь пакет до изменений: либо добавляется целиком, либо не добавляется
+        Set<String> expenseCategories = new LinkedHashSet<>();
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            try {
+                if (transaction == null || transaction.getType() == null) {
+                    throw new ValidationException("транзакция", "не заполнена");
+                }
+                validateAmount(transaction.getAmount());
+                validateCategory(transaction.getCategory());
+            } catch (ValidationException e) {
+                throw new ValidationException("Транзакция " + (i + 1) + ": " + e.getMessage());
+            }
+            if (transaction.isExpense()) {
+                expenseCategories.add(transaction.getCategory());
+            }
+        }
+        if (transactions.isEmpty()) {
+            return 0;
+        }
+
+        Wallet wallet = getCurrentWallet();
+        runAtomically(() -> wallet.addTransactions(transactions));
+
+        for (String category : expenseCategories) {
+            checkBudgetAndNotify(wallet, category);
+        }
+        if (!expenseCategories.isEmpty() && wallet.getBalance().compareTo(BigDecimal.ZERO) < 0) {
+            notificationService.notifyNegativeBalance(wallet.getBalance());
+        }
+
+        return transactions.size();
+    }
+
     /** Проверяет состояние бюджета после добавления расхода и отправляет уведомления. */
     private void checkBudgetAndNotify(Wallet wallet, String category) {
         BigDecimal budget = wallet.getBudget(category);
@@ -129,11 +229,28 @@ public class FinanceServiceImpl implements FinanceService {
         return getCurrentWallet().getTransactions();
     }
 
+    @Override
+    public Iterator<Transaction> iterateTransactions() {
+        return getCurrentWallet().iterateTransactions();
+    }
+
     @Override
     public List<Transaction> getTransactionsByPeriod(LocalDateTime from, LocalDateTime to) {
         return getCurrentWallet().getTransactionsByPeriod(from, to);
     }
 
+    /** Возвращает сводку за период по накопленным итогам кошелька. */
+    @Override
+    public TransactionSummary getPeriodSummary(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null) {
+            throw new ValidationException("период", "границы не могут быть пустыми");
+        }
+        if (from.isAfter(to)) {
+            throw new ValidationException("Дата начала не может быть позже даты окончания");
+        }
+        return getCurrentWallet().getSummaryByPeriod(from, to);
+    }
+
     @Override
     public List<Transaction> getTransactionsByCategory(String category) {
         validateCategory(category);
@@ -143,6 +260,7 @@ public class FinanceServiceImpl implements FinanceService {
     /** Устанавливает бюджет для категории. */
     @Override
     public void setBudget(String category, BigDecimal limit) {
+        requireWritable();
         validateCategory(category);
         validateAmount(limit);
         getCurrentWallet().setBudget(category.trim(), limit);
@@ -151,6 +269,7 @@ public class FinanceServiceImpl implements FinanceService {
     /** Удаляет бюджет для категории. */
     @Override
     public void removeBudget(String category) {
+        requireWritable();
         validateCategory(category);
         getCurrentWallet().removeBudget(category.trim());
     }
@@ -185,36 +304,22 @@ public class FinanceServiceImpl implements FinanceService {
         return getCurrentWallet().getBalance();
     }
 
+    /** Возвращает снимок статистики по кошельку текущего пользователя. */
+    @Override
+    public TransactionSummary getStatistics() {
+        return getCurrentWallet().getSummary();
+    }
+
     /** Возвращает статистику расходов по категориям. */
     @Override
     public Map<String, BigDecimal> getExpensesByCategory() {
-        Map<String, BigDecimal> result = new HashMap<>();
-        Wallet wallet = getCurrentWallet();
-
-        for (String category : wallet.getAllCategories()) {
-            BigDecimal expense = wallet.getExpenseByCategory(category);
-            if (expense.compareTo(BigDecimal.ZERO) > 0) {
-                result.put(category, expense);
-            }
-        }
-
-        return result;
+        return getStatistics().getExpensesByCategory();
     }
 
     /** Возвращает статистику доходов по категориям. */
     @Override
     public Map<String, BigDecimal> getIncomesByCategory() {
-        Map<String, BigDecimal> result = new HashMap<>();
-        Wallet wallet = getCurrentWallet();
-
-        for (String category : wallet.getAllCategories()) {
-            BigDecimal income = wallet.getIncomeByCategory(category);
-            if (income.compareTo(BigDecimal.ZERO) > 0) {
-                result.put(category, income);
-            }
-        }
-
-        return result;
+        return getStatistics().getIncomesByCategory();
     }
 
     /** Вычисляет сумму расходов по нескольким категориям. */
@@ -225,13 +330,11 @@ public class FinanceServiceImpl implements FinanceService {
         }
 
         Wallet wallet = getCurrentWallet();
-        List<String> existingCategories = wallet.getAllCategories();
+        TransactionSummary statistics = wallet.getSummary();
 
         // Проверяем, есть ли несуществующие категории
         for (String category : categories) {
-            boolean found =
-                    existingCategories.stream().anyMatch(c -> c.equalsIgnoreCase(category.trim()));
-            if (!found) {
+            if (statistics.getCategory(category.trim()) == null) {
                 notificationService.notifyCategoryNotFound(category);
             }
         }
@@ -247,33 +350,20 @@ public class FinanceServiceImpl implements FinanceService {
     /** Выполняет перевод между пользователями. */
     @Override
     public boolean transfer(User toUser, BigDecimal amount, String description) {
+        requireWritable();
         validateAmount(amount);
 
         if (toUser == null) {
             throw new ValidationException("получатель", "не найден");
         }
 
-        User currentUser =
-                authService
-                        .getCurrentUser()
-                        .orElseThrow(() -> new ValidationException("Пользователь не авторизован"));
+        User currentUser = getCurrentUser();
 
         // Проверка — нельзя переводить самому себе
         if (currentUser.getLogin().equalsIgnoreCase(toUser.getLogin())) {
             throw new ValidationException("Нельзя сделать перевод самому себе");
         }
 
-        // Проверка баланса
-        Wallet senderWallet = currentUser.getWallet();
-        if (senderWallet.getBalance().compareTo(amount) < 0) {
-            throw new ValidationException(
-                    "Недостаточно средств для перевода. "
-                            + "Баланс: "
-                            + senderWallet.getBalance()
-                            + ", сумма перевода: "
-                            + amount);
-        }
-
         // Формируем описание
         String transferDescription =
                 description != null && !description.isEmpty() ? description : "Перевод средств";
@@ -285,9 +375,6 @@ public class FinanceServiceImpl implements FinanceService {
                         amount,
                         "Перевод",
                         "Перевод пользователю " + toUser.getLogin() + ": " + transferDescription);
-        senderWallet.addTransaction(senderExpense);
-
-        checkBudgetAndNotify(senderWallet, "Перевод");
 
         // Создаём доход у получателя
         Transaction receiverIncome =
@@ -296,11 +383,205 @@ public class FinanceServiceImpl implements FinanceService {
                         amount,
                         "Перевод",
                         "Перевод от " + currentUser.getLogin() + ": " + transferDescription);
-        toUser.getWallet().addTransaction(receiverIncome);
+
+        // Баланс проверяется и обе стороны записываются под блокировками обоих кошельков.
+        // Порядок блокировок — по логинам, чтобы встречные переводы не блокировали друг друга.
+        Wallet senderWallet = currentUser.getWallet();
+        boolean senderLocksFirst =
+                currentUser.getLogin().toLowerCase().compareTo(toUser.getLogin().toLowerCase()) < 0;
+        boolean[] completed = new boolean[1];
+        User recipient = acquireRecipient(toUser);
+        try {
+            runAtomically(
+                    () ->
+                            completed[0] =
+                                    Wallet.transfer(
+                                            senderWallet,
+                                            senderExpense,
+                                            recipient.getWallet(),
+                                            receiverIncome,
+                                            senderLocksFirst));
+        } finally {
+            releaseRecipient(recipient);
+        }
+
+        if (!completed[0]) {
+            throw new ValidationException(
+                    "Недостаточно средств для перевода. "
+                            + "Баланс: "
+                            + senderWallet.getBalance()
+                            + ", сумма перевода: "
+                            + amount);
+        }
+
+        awaitDurable();
+        checkBudgetAndNotify(senderWallet, "Перевод");
 
         // Уведомляем об успешном переводе
         notificationService.notifyTransferSuccess(toUser.getLogin(), amount);
 
         return true;
     }
+
+    /**
+     * Выполняет пакет переводов.
+     *
+     * <p>Все переводы проверяются заранее, баланс сравнивается с общей суммой один раз, расходы
+     * отправителя добавляются одним шагом под его блокировкой. Зачисление получателям после
+     * успешного списания отказать не может, поэтому каждый получатель блокируется отдельно и
+     * ненадолго. Бюджет отправителя проверяется один раз в конце, а в хранилище пакет уходит одной
+     * записью.
+     *
+     * <p>Получатели зачисляются по очереди в вызывающем потоке, а не параллельно. Одной записью
+     * хранилища становятся изменения, сделанные внутри {@link UserRepository#runAtomically} в
+     * текущем потоке (журнал собирает их в записи потока), — зачисления из других потоков ушли бы в
+     * журнал отдельными записями и после сбоя могли бы восстановиться без списания. Зачисление —
+     * короткое добавление в индексы кошелька, поэтому выигрыш от параллельности был бы меньше
+     * затрат на передачу задач.
+     */
+    @Override
+    public BigDecimal transferBatch(List<TransferRequest> transfers, String description) {
+        requireWritable();
+        if (transfers == null || transfers.isEmpty()) {
+            throw new ValidationException("переводы", "список пуст");
+        }
+
+        User currentUser = getCurrentUser();
+        String transferDescription =
+                description != null && !description.isEmpty() ? description : "Перевод средств";
+
+        // Проверяем весь пакет до изменений: либо выполняется целиком, либо не выполняется
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferRequest transfer = transfers.get(i);
+            try {
+                if (transfer == null) {
+                    throw new ValidationException("перевод", "не заполнен");
+                }
+                validateAmount(transfer.getAmount());
+                if (transfer.getRecipient() == null) {
+                    throw new ValidationException("получатель", "не найден");
+                }
+                if (currentUser.getLogin().equalsIgnoreCase(transfer.getRecipient().getLogin())) {
+                    throw new ValidationException("Нельзя сделать перевод самому себе");
+                }
+            } catch (ValidationException e) {
+                throw new ValidationException("Перевод " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+
+        BigDecimal total = BigDecimal.ZERO;
+        List<Transaction> expenses = new ArrayList<>(transfers.size());
+        List<Transaction> incomes = new ArrayList<>(transfers.size());
+        for (TransferRequest transfer : transfers) {
+            User toUser = transfer.getRecipient();
+            BigDecimal amount = transfer.getAmount();
+            total = total.add(amount);
+            expenses.add(
+                    new Transaction(
+                            TransactionType.EXPENSE,
+                            amount,
+                            "Перевод",
+                            "Перевод пользователю "
+                                    + toUser.getLogin()
+                                    + ": "
+                                    + transferDescription));
+            incomes.add(
+                    new Transaction(
+                            TransactionType.INCOME,
+                            amount,
+                            "Перевод",
+                            "Перевод от " + currentUser.getLogin() + ": " + transferDescription));
+        }
+
+        Wallet senderWallet = currentUser.getWallet();
+        boolean[] completed = new boolean[1];
+        List<User> recipients = new ArrayList<>(transfers.size());
+        try {
+            for (TransferRequest transfer : transfers) {
+                recipients.add(acquireRecipient(transfer.getRecipient()));
+            }
+            runAtomically(
+                    () -> {
+                        completed[0] = senderWallet.withdraw(expenses);
+                        if (!completed[0]) {
+                            return;
+                        }
+                        for (int i = 0; i < recipients.size(); i++) {
+                            recipients.get(i).getWallet().addTransaction(incomes.get(i));
+                        }
+                    });
+        } finally {
+            recipients.forEach(this::releaseRecipient);
+        }
+
+        if (!completed[0]) {
+            throw new ValidationException(
+                    "Недостаточно средств для пакета переводов. "
+                            + "Баланс: "
+                            + senderWallet.getBalance()
+                            + ", общая сумма: "
+                            + total);
+        }
+
+        awaitDurable();
+        checkBudgetAndNotify(senderWallet, "Перевод");
+        notificationService.notifyBatchTransferSuccess(transfers.size(), total);
+
+        return total;
+    }
+
+    /**
+     * Дожидается записи перевода на диск, прежде чем сообщить об успехе.
+     *
+     * <p>Одновременные переводы ждут общую групповую фиксацию журнала. Если запись не удалась,
+     * перевод остаётся в памяти и будет сохранён следующей записью — пользователь получает
+     * предупреждение. Хранилище без групповой фиксации получает обычный {@link
+     * UserRepository#flush()}: полный снимок не пишется в потоке пользователя, если включена
+     * фоновая запись.
+     */
+    private void awaitDurable() {
+        if (userRepository == null) {
+            return;
+        }
+        if (!userRepository.supportsGroupCommit()) {
+            userRepository.flush();
+            return;
+        }
+        try {
+            userRepository.flushAsync().join();
+        } catch (CompletionException e) {
+            notificationService.printWarning(
+                    "Перевод выполнен, но пока не сохранён: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Закрепляет получателя в хранилище на время перевода и возвращает его экземпляр из хранилища.
+     *
+     * <p>Переданный вызывающим экземпляр мог быть уже выгружен (получатель вышел из системы):
+     * зачисление на него не попало бы в хранилище.
+     */
+    private User acquireRecipient(User recipient) {
+        if (userRepository == null) {
+            return recipient;
+        }
+        return userRepository
+                .acquire(recipient.getLogin())
+                .orElseThrow(() -> new ValidationException("получатель", "не найден"));
+    }
+
+    private void releaseRecipient(User recipient) {
+        if (userRepository != null) {
+            userRepository.release(recipient.getLogin());
+        }
+    }
+
+    /** Выполняет изменения кошельков как одну запись хранилища (если оно задано). */
+    private void runAtomically(Runnable unit) {
+        if (userRepository != null) {
+            userRepository.runAtomically(unit);
+        } else {
+            unit.run();
+        }
+    }
 }
@@ -96,6 +96,15 @@ public class NotificationService {
         printSuccess(message);
     }
 
+    /** Уведомление об успешном пакете переводов. */
+    public void notifyBatchTransferSuccess(int count, BigDecimal total) {
+        String message =
+                String.format(
+                        "✅ Пакет переводов выполнен успешно!%n" + "   Получателей: %d, Сумма: %.2f",
+                        count, total);
+        printSuccess(message);
+    }
+
     /** Выводит сообщение об успехе (зелёный цвет). */
     public void printSuccess(String message) {
         if (useColors) {
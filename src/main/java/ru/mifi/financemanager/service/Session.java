@@ -0,0 +1,41 @@
+package ru.mifi.financemanager.service;
+
+import java.time.LocalDateTime;
+import ru.mifi.financemanager.domain.User;
+
+/**
+ * Сессия аутентифицированного пользователя.
+ *
+ * <p>Сессия идентифицируется случайным токеном, который выдаётся при входе. Один пользователь может
+ * иметь несколько сессий одновременно.
+ */
+public final class Session {
+
+    private final String token;
+
+    private final User user;
+
+    private final LocalDateTime createdAt;
+
+    Session(String token, User user) {
+        this.token = token;
+        this.user = user;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public String getLogin() {
+        return user.getLogin();
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,25 @@
+package ru.mifi.financemanager.service;
+
+import java.math.BigDecimal;
+import ru.mifi.financemanager.domain.User;
+
+/** Один перевод в пакете: получатель и сумма. */
+public final class TransferRequest {
+
+    private final User recipient;
+
+    private final BigDecimal amount;
+
+    public TransferRequest(User recipient, BigDecimal amount) {
+        this.recipient = recipient;
+        this.amount = amount;
+    }
+
+    public User getRecipient() {
+        return recipient;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+}
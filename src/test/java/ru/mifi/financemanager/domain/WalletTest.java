@@ -2,12 +2,25 @@ package ru.mifi.financemanager.domain;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import ru.mifi.financemanager.repository.LocalDateTimeAdapter;
 
 /**
  * Тесты для класса Wallet.
@@ -71,6 +84,90 @@ class WalletTest {
 
             assertEquals(new BigDecimal("-1000"), wallet.getBalance());
         }
+
+        @Test
+        @DisplayName("Агрегаты восстанавливаются после десериализации")
+        void aggregatesShouldBeRestoredAfterDeserialization() {
+            wallet.addTransaction(
+                    new Transaction(
+                            TransactionType.INCOME, new BigDecimal("10000"), "Зарплата", ""));
+            wallet.addTransaction(
+                    new Transaction(TransactionType.EXPENSE, new BigDecimal("2500"), "Еда", ""));
+
+            Gson gson =
+                    new GsonBuilder()
+                            .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
+                            .create();
+            Wallet restored = gson.fromJson(gson.toJson(wallet), Wallet.class);
+            restored.recalculateAggregates();
+
+            assertEquals(new BigDecimal("10000"), restored.getTotalIncome());
+            assertEquals(new BigDecimal("2500"), restored.getTotalExpense());
+            assertEquals(new BigDecimal("7500"), restored.getBalance());
+        }
+
+        @Test
+        @DisplayName("Параллельные добавления не теряются, агрегаты согласованы со списком")
+        void concurrentAddsShouldKeepAggregatesConsistent() throws InterruptedException {
+            int threads = 8;
+            int perThread = 500;
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String category = t % 2 == 0 ? "Еда" : "Транспорт";
+                Thread writer =
+                        new Thread(
+                                () -> {
+                                    for (int i = 0; i < perThread; i++) {
+                                        wallet.addTransaction(
+                                                new Transaction(
+                                                        TransactionType.EXPENSE,
+                                                        BigDecimal.ONE,
+                                                        category,
+                                                        ""));
+                                        wallet.getSummary();
+                                    }
+                                });
+                writers.add(writer);
+                writer.start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+
+            BigDecimal total = new BigDecimal(threads * perThread);
+            assertEquals(threads * perThread, wallet.getTransactions().size());
+            assertEquals(total, wallet.getTotalExpense());
+            assertEquals(total, wallet.getSummary().getTotalExpense());
+            assertEquals(
+                    total,
+                    wallet.getExpenseByCategory("Еда")
+                            .add(wallet.getExpenseByCategory("Транспорт")));
+            assertEquals(threads * perThread, wallet.snapshot().getVersion());
+        }
+
+        @Test
+        @DisplayName("Обход транзакций идёт страницами и не видит добавленных после начала")
+        void iterateTransactionsShouldCoverHistoryAtStart() {
+            for (int i = 0; i < 2500; i++) {
+                wallet.addTransaction(
+                        new Transaction(
+                                TransactionType.INCOME, BigDecimal.ONE, "Зарплата", "#" + i));
+            }
+            List<Transaction> expected = wallet.getTransactions();
+
+            Iterator<Transaction> cursor = wallet.iterateTransactions();
+            List<Transaction> seen = new ArrayList<>();
+            for (int i = 0; i < 1500; i++) {
+                seen.add(cursor.next());
+            }
+            wallet.addTransaction(
+                    new Transaction(TransactionType.EXPENSE, BigDecimal.ONE, "Еда", "позже"));
+            cursor.forEachRemaining(seen::add);
+
+            assertEquals(expected, seen);
+            assertThrows(NoSuchElementException.class, cursor::next);
+            assertFalse(new Wallet().iterateTransactions().hasNext());
+        }
     }
 
     @Nested
@@ -183,6 +280,74 @@ class WalletTest {
 
             assertNull(wallet.getBudget("Еда"));
         }
+
+        @Test
+        @DisplayName("Изменения отмечают кошелёк несохранённым до markSaved")
+        void changesShouldMarkWalletDirty() {
+            assertFalse(wallet.isDirty());
+
+            wallet.setBudget("Еда", new BigDecimal("10000"));
+            long saved = wallet.getVersion();
+            wallet.addTransaction(
+                    new Transaction(TransactionType.EXPENSE, new BigDecimal("100"), "Еда", ""));
+            wallet.markSaved(saved);
+            assertTrue(wallet.isDirty(), "изменение после фиксации версии не должно теряться");
+
+            wallet.markSaved(wallet.getVersion());
+            wallet.removeBudget("Транспорт");
+            assertFalse(wallet.isDirty(), "удаление несуществующего бюджета ничего не меняет");
+        }
+
+        @Test
+        @DisplayName("Бюджеты и категории читаются без ожидания изменения кошелька")
+        void budgetsShouldBeReadableDuringWrite() throws InterruptedException {
+            wallet.setBudget("Еда", new BigDecimal("10000"));
+            wallet.addTransaction(
+                    new Transaction(TransactionType.EXPENSE, new BigDecimal("100"), "Еда", ""));
+            CountDownLatch writing = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            wallet.setListener(
+                    new WalletListener() {
+                        @Override
+                        public void onTransactionAdded(Transaction transaction) {
+                            // Держим блокировку записи, пока тест читает кошелёк
+                            writing.countDown();
+                            try {
+                                release.await(10, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+
+                        @Override
+                        public void onBudgetChanged(String category, BigDecimal limit) {}
+                    });
+            Thread writer =
+                    new Thread(
+                            () ->
+                                    wallet.addTransaction(
+                                            new Transaction(
+                                                    TransactionType.EXPENSE,
+                                                    new BigDecimal("50"),
+                                                    "Транспорт",
+                                                    "")));
+            writer.start();
+            assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+            try {
+                assertTimeoutPreemptively(
+                        Duration.ofSeconds(5),
+                        () -> {
+                            assertEquals(new BigDecimal("10000"), wallet.getBudget("Еда"));
+                            assertEquals(List.of("Еда"), wallet.getCategoriesWithBudget());
+                            assertTrue(wallet.getAllCategories().contains("Еда"));
+                            assertNotNull(wallet.getBalance());
+                        });
+            } finally {
+                release.countDown();
+                writer.join(10_000);
+            }
+        }
     }
 
     @Nested
@@ -221,5 +386,92 @@ class WalletTest {
 
             assertEquals(new BigDecimal("3000"), total);
         }
+
+        @Test
+        @DisplayName("Фильтрация по периоду учитывает исторические даты")
+        void getTransactionsByPeriodShouldHandleHistoricalDates() {
+            LocalDateTime base = LocalDateTime.of(2025, 1, 15, 12, 0);
+            wallet.addTransaction(expenseAt(base.plusDays(10), "1000"));
+            // Импортированные операции приходят позже, но с более ранними датами
+            wallet.addTransaction(expenseAt(base.minusDays(30), "2000"));
+            wallet.addTransaction(expenseAt(base, "3000"));
+            wallet.addTransaction(expenseAt(base.plusDays(1), "4000"));
+
+            List<Transaction> result =
+                    wallet.getTransactionsByPeriod(base.minusDays(1), base.plusDays(10));
+
+            assertEquals(3, result.size());
+            assertEquals(new BigDecimal("3000"), result.get(0).getAmount());
+            assertEquals(new BigDecimal("4000"), result.get(1).getAmount());
+            assertEquals(new BigDecimal("1000"), result.get(2).getAmount());
+            assertTrue(wallet.getTransactionsByPeriod(base.plusDays(1), base).isEmpty());
+        }
+
+        @Test
+        @DisplayName("Сводка за период совпадает с прямым подсчётом по транзакциям")
+        void getSummaryByPeriodShouldMatchRawScan() {
+            LocalDateTime start = LocalDateTime.of(2024, 11, 20, 0, 0);
+            for (int i = 0; i < 150; i++) {
+                // Шаг в 17 часов даёт операции в разное время суток на протяжении ~3.5 месяцев
+                wallet.addTransaction(
+                        new Transaction(
+                                UUID.randomUUID().toString().substring(0, 8),
+                                i % 3 == 0 ? TransactionType.INCOME : TransactionType.EXPENSE,
+                                new BigDecimal(100 + i),
+                                i % 2 == 0 ? "Еда" : "Транспорт",
+                                "",
+                                start.plusHours(17L * i)));
+            }
+
+            LocalDateTime[][] periods = {
+                {LocalDateTime.of(2024, 11, 25, 13, 30), LocalDateTime.of(2025, 2, 3, 8, 15)},
+                {
+                    LocalDateTime.of(2024, 12, 1, 0, 0),
+                    LocalDate.of(2025, 1, 31).atTime(LocalTime.MAX)
+                },
+                {LocalDateTime.of(2025, 1, 10, 6, 0), LocalDateTime.of(2025, 1, 10, 18, 0)},
+                {LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2026, 1, 1, 0, 0)}
+            };
+
+            for (LocalDateTime[] period : periods) {
+                TransactionSummary expected =
+                        TransactionSummary.of(wallet.getTransactionsByPeriod(period[0], period[1]));
+                TransactionSummary actual = wallet.getSummaryByPeriod(period[0], period[1]);
+
+                assertEquals(expected.getTransactionCount(), actual.getTransactionCount());
+                assertEquals(expected.getTotalIncome(), actual.getTotalIncome());
+                assertEquals(expected.getTotalExpense(), actual.getTotalExpense());
+                assertEquals(expected.getExpensesByCategory(), actual.getExpensesByCategory());
+            }
+        }
+
+        @Test
+        @DisplayName("Запросы по категории не зависят от регистра")
+        void categoryQueriesShouldBeCaseInsensitive() {
+            wallet.addTransaction(
+                    new Transaction(TransactionType.EXPENSE, new BigDecimal("1000"), "Еда", ""));
+            wallet.addTransaction(
+                    new Transaction(TransactionType.EXPENSE, new BigDecimal("500"), "ЕДА", ""));
+            wallet.addTransaction(
+                    new Transaction(TransactionType.INCOME, new BigDecimal("700"), "еда", ""));
+
+            assertEquals(new BigDecimal("1500"), wallet.getExpenseByCategory("еда"));
+            assertEquals(new BigDecimal("700"), wallet.getIncomeByCategory("Еда"));
+            assertEquals(3, wallet.getTransactionsByCategory("еДа").size());
+            // Список категорий сохраняет исходное написание
+            assertEquals(List.of("ЕДА", "Еда", "еда"), wallet.getAllCategories());
+            assertEquals(
+                    new BigDecimal("1500"), wallet.getExpenseByCategories(List.of("Еда", "еда")));
+        }
+
+        private Transaction expenseAt(LocalDateTime createdAt, String amount) {
+            return new Transaction(
+                    UUID.randomUUID().toString().substring(0, 8),
+                    TransactionType.EXPENSE,
+                    new BigDecimal(amount),
+                    "Еда",
+                    "",
+                    createdAt);
+        }
     }
 }
@@ -0,0 +1,60 @@
+package ru.mifi.financemanager.export;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionType;
+import ru.mifi.financemanager.domain.Wallet;
+
+/** Тесты экспорта транзакций в CSV. */
+@DisplayName("CsvExporter — тесты экспорта")
+class CsvExporterTest {
+
+    @TempDir Path tempDir;
+
+    @Test
+    @DisplayName("Экспорт из обхода кошелька читается импортом без потерь")
+    void exportFromCursorShouldRoundTrip() throws IOException {
+        Wallet wallet = new Wallet();
+        for (int i = 0; i < 3000; i++) {
+            wallet.addTransaction(
+                    new Transaction(
+                            "id" + i,
+                            i % 2 == 0 ? TransactionType.INCOME : TransactionType.EXPENSE,
+                            new BigDecimal("10.5" + i % 10),
+                            i % 3 == 0 ? "Еда; кафе" : "Зарплата",
+                            i % 5 == 0 ? "Строка 1\nСтрока 2 \"цитата\"" : "Описание",
+                            LocalDateTime.of(2024, 1, 1 + i % 28, 12, 30, 15)));
+        }
+        Path file = tempDir.resolve("out/export.csv");
+
+        int exported = new CsvExporter().export(wallet.iterateTransactions(), file.toString());
+
+        assertEquals(3000, exported);
+        List<Transaction> imported = new ArrayList<>();
+        CsvImporter.ImportStats stats =
+                new CsvImporter().importStreaming(file.toString(), 1000, imported::addAll);
+        assertFalse(stats.hasErrors());
+        List<Transaction> original = wallet.getTransactions();
+        assertEquals(original.size(), imported.size());
+        for (int i = 0; i < original.size(); i++) {
+            Transaction expected = original.get(i);
+            Transaction actual = imported.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getType(), actual.getType());
+            assertEquals(expected.getAmount(), actual.getAmount());
+            assertEquals(expected.getCategory(), actual.getCategory());
+            assertEquals(expected.getDescription(), actual.getDescription());
+            assertEquals(expected.getCreatedAt(), actual.getCreatedAt());
+        }
+    }
+}
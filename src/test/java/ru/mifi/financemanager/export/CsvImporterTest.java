@@ -0,0 +1,240 @@
+package ru.mifi.financemanager.export;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mifi.financemanager.domain.Transaction;
+
+/** Тесты импорта транзакций из CSV. */
+@DisplayName("CsvImporter — тесты импорта")
+class CsvImporterTest {
+
+    @TempDir Path tempDir;
+
+    @Test
+    @DisplayName("Потоковый импорт передаёт транзакции порциями и хранит только первые ошибки")
+    void streamingImportShouldDeliverChunksAndCapErrors() throws IOException {
+        StringBuilder csv = new StringBuilder("ID;Тип;Сумма;Категория;Дата;Описание\n");
+        for (int i = 0; i < 250; i++) {
+            csv.append("id").append(i).append(";Расход;10,50;Еда;2024-01-15 12:30:00;Обед\n");
+        }
+        for (int i = 0; i < CsvImporter.MAX_ERROR_SAMPLES + 20; i++) {
+            csv.append("bad;Расход;не число;Еда;2024-01-15 12:30:00;\n");
+        }
+        Path file = tempDir.resolve("import.csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+
+        List<Integer> chunkSizes = new ArrayList<>();
+        List<Transaction> imported = new ArrayList<>();
+        CsvImporter.ImportStats stats =
+                new CsvImporter()
+                        .importStreaming(
+                                file.toString(),
+                                100,
+                                chunk -> {
+                                    chunkSizes.add(chunk.size());
+                                    imported.addAll(chunk);
+                                });
+
+        assertEquals(List.of(100, 100, 50), chunkSizes);
+        assertEquals(250, stats.getSuccessfulLines());
+        assertEquals(250 + CsvImporter.MAX_ERROR_SAMPLES + 20, stats.getTotalLines());
+        assertEquals(CsvImporter.MAX_ERROR_SAMPLES + 20, stats.getErrorCount());
+        assertEquals(CsvImporter.MAX_ERROR_SAMPLES, stats.getErrorSamples().size());
+        assertTrue(stats.getErrorSamples().get(0).startsWith("Строка 251:"));
+        assertEquals(new BigDecimal("10.50"), imported.get(0).getAmount());
+    }
+
+    @Test
+    @DisplayName("Параллельный импорт совпадает с последовательным, многострочные поля не рвутся")
+    void parallelImportShouldMatchSequential() throws IOException {
+        StringBuilder csv = new StringBuilder("ID;Тип;Сумма;Категория;Дата;Описание\n");
+        for (int i = 0; i < 500; i++) {
+            if (i % 7 == 0) {
+                csv.append("bad").append(i).append(";Расход;0;Еда;2024-01-15 12:30:00;\n");
+            } else {
+                csv.append("id")
+                        .append(i)
+                        .append(";Доход;")
+                        .append(i)
+                        .append(
+                                ";Зарплата;2024-01-15 12:30:00;\"Строка 1\nСтрока 2; \"\"цитата\"\"\"\r\n");
+            }
+        }
+        Path file = tempDir.resolve("parallel.csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+
+        // Маленькие блоки — много границ внутри файла
+        CsvImporter importer = new CsvImporter(256);
+        List<Transaction> sequential = new ArrayList<>();
+        CsvImporter.ImportStats sequentialStats =
+                importer.importStreaming(file.toString(), 64, sequential::addAll);
+        List<Transaction> parallel = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        CsvImporter.ImportStats parallelStats;
+        try {
+            parallelStats = importer.importParallel(file.toString(), 64, parallel::addAll, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(500, parallelStats.getTotalLines());
+        assertEquals(sequentialStats.getSuccessfulLines(), parallelStats.getSuccessfulLines());
+        assertEquals(sequentialStats.getErrorSamples(), parallelStats.getErrorSamples());
+        assertTrue(parallelStats.getErrorSamples().get(1).startsWith("Строка 8:"));
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(sequential.get(i).getId(), parallel.get(i).getId());
+        }
+        assertEquals("Строка 1\nСтрока 2; \"цитата\"", parallel.get(0).getDescription());
+    }
+
+    @Test
+    @DisplayName("Поля читаются из байтов так же, как при разборе строк")
+    void fieldsShouldBeParsedFromBytes() throws IOException {
+        String csv =
+                " a1 ; income ; 1234,5 ; \"Еда; кафе\" ;2024-02-29 23:59:59; \"\"\"Обед\"\"\" \n"
+                        + "a2;ДОХОД;+10;Зарплата;2024-02-30 10:00;\n"
+                        + "a3;Расход;1e2;Еда;2024-01-15T12:30:00.5;\n"
+                        + "a4;Расход;-5;Еда;2024-01-15 12:30:00;\n"
+                        + "a5;Расход;5;Еда;2024-13-15 12:30:00;\n";
+        Path file = tempDir.resolve("fields.csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+
+        CsvImporter.ImportResult result = new CsvImporter().importFromFile(file.toString());
+
+        List<Transaction> transactions = result.getTransactions();
+        assertEquals(3, transactions.size());
+        Transaction first = transactions.get(0);
+        assertEquals("a1", first.getId());
+        assertEquals(new BigDecimal("1234.5"), first.getAmount());
+        assertEquals("Еда; кафе", first.getCategory());
+        assertEquals("\"Обед\"", first.getDescription());
+        assertEquals(LocalDateTime.of(2024, 2, 29, 23, 59, 59), first.getCreatedAt());
+        // Необычные записи разбираются прежним путём
+        assertEquals(new BigDecimal("10"), transactions.get(1).getAmount());
+        assertEquals(LocalDateTime.of(2024, 2, 29, 10, 0), transactions.get(1).getCreatedAt());
+        assertEquals(new BigDecimal("1e2"), transactions.get(2).getAmount());
+        assertEquals(
+                List.of(
+                        "Строка 4: Сумма должна быть положительной",
+                        "Строка 5: Неверный формат даты: 2024-13-15 12:30:00"),
+                result.getErrors());
+    }
+
+    @Test
+    @DisplayName("Даты в разных форматах разбираются как форматтерами, формат может меняться")
+    void datesShouldBeParsedInAllLayouts() throws IOException {
+        String[] dates = {
+            "2024-01-15 12:30:00",
+            "2024-04-31 08:00:00",
+            "2024-01-15T12:30",
+            "2024-01-15T12:30:15.25",
+            "2024-01-15T12:30:15.",
+            "2024-01-15 12:30",
+            "2024-01-15 24:00:00",
+            "2024-01-15 12:30:00",
+            "2024-04-31T08:00",
+            "15.01.2024"
+        };
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < dates.length; i++) {
+            csv.append("d").append(i).append(";Доход;1;Зарплата;").append(dates[i]).append(";\n");
+        }
+        Path file = tempDir.resolve("dates.csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+
+        CsvImporter.ImportResult result = new CsvImporter().importFromFile(file.toString());
+
+        List<LocalDateTime> parsed = new ArrayList<>();
+        for (Transaction transaction : result.getTransactions()) {
+            parsed.add(transaction.getCreatedAt());
+        }
+        assertEquals(
+                List.of(
+                        LocalDateTime.of(2024, 1, 15, 12, 30),
+                        LocalDateTime.of(2024, 4, 30, 8, 0),
+                        LocalDateTime.of(2024, 1, 15, 12, 30),
+                        LocalDateTime.of(2024, 1, 15, 12, 30, 15, 250_000_000),
+                        LocalDateTime.of(2024, 1, 15, 12, 30, 15),
+                        LocalDateTime.of(2024, 1, 15, 12, 30),
+                        LocalDateTime.of(2024, 1, 16, 0, 0),
+                        LocalDateTime.of(2024, 1, 15, 12, 30)),
+                parsed);
+        assertEquals(
+                List.of(
+                        "Строка 9: Неверный формат даты: 2024-04-31T08:00",
+                        "Строка 10: Неверный формат даты: 15.01.2024"),
+                result.getErrors());
+    }
+
+    @Test
+    @DisplayName("Незакрытая кавычка до конца файла портит только свою запись")
+    void unclosedQuoteAtEndShouldFailOnlyItsRecord() throws IOException {
+        StringBuilder csv = new StringBuilder("ID;Тип;Сумма;Категория;Дата;Описание\n");
+        csv.append("bad;Расход;100;Еда;2024-01-15 12:30:00;Кафе \"Ромашка\r\n");
+        for (int i = 0; i < 5; i++) {
+            csv.append("id").append(i).append(";Расход;10;Еда;2024-01-15 12:30:00;Обед\n");
+        }
+        Path file = tempDir.resolve("unclosed.csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+
+        CsvImporter.ImportResult result = new CsvImporter().importFromFile(file.toString());
+
+        assertEquals(6, result.getTotalLines());
+        assertEquals(5, result.getSuccessfulLines());
+        assertEquals("id0", result.getTransactions().get(0).getId());
+        assertEquals(List.of("Строка 1: Незакрытая кавычка"), result.getErrors());
+    }
+
+    @Test
+    @DisplayName("Запись с незакрытой кавычкой ограничена, следующие строки импортируются")
+    void unclosedQuoteShouldNotSwallowFollowingRecords() throws IOException {
+        StringBuilder csv = new StringBuilder("ID;Тип;Сумма;Категория;Дата;Описание\n");
+        csv.append("bad;Расход;100;Еда;2024-01-15 12:30:00;Кафе \"Ромашка\n");
+        int valid = CsvImporter.MAX_QUOTED_LINES * 3;
+        for (int i = 0; i < valid; i++) {
+            csv.append("id").append(i).append(";Расход;10;Еда;2024-01-15 12:30:00;Обед\n");
+        }
+        // Правильная многострочная запись после ошибки по-прежнему читается целиком
+        csv.append("last;Доход;1;Зарплата;2024-01-15 12:30:00;\"Строка 1\nСтрока 2\"\n");
+        Path file = tempDir.resolve("unclosed-long.csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+
+        CsvImporter importer = new CsvImporter(256);
+        List<Transaction> sequential = new ArrayList<>();
+        CsvImporter.ImportStats sequentialStats =
+                importer.importStreaming(file.toString(), 64, sequential::addAll);
+        List<Transaction> parallel = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        CsvImporter.ImportStats parallelStats;
+        try {
+            parallelStats = importer.importParallel(file.toString(), 64, parallel::addAll, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        for (CsvImporter.ImportStats stats : List.of(sequentialStats, parallelStats)) {
+            assertEquals(valid + 2, stats.getTotalLines());
+            assertEquals(valid + 1, stats.getSuccessfulLines());
+            assertEquals(List.of("Строка 1: Незакрытая кавычка"), stats.getErrorSamples());
+        }
+        assertEquals(valid + 1, parallel.size());
+        assertEquals("id0", parallel.get(0).getId());
+        assertEquals("Строка 1\nСтрока 2", parallel.get(valid).getDescription());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(sequential.get(i).getId(), parallel.get(i).getId());
+        }
+    }
+}
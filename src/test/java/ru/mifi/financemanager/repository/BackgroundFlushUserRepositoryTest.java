@@ -0,0 +1,116 @@
+package ru.mifi.financemanager.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionType;
+import ru.mifi.financemanager.domain.User;
+
+/** Тесты фоновой записи изменений. */
+@DisplayName("BackgroundFlushUserRepository — тесты фоновой записи")
+class BackgroundFlushUserRepositoryTest {
+
+    @TempDir Path tempDir;
+
+    private String dataFile;
+
+    @BeforeEach
+    void setUp() {
+        dataFile = tempDir.resolve("users.json").toString();
+    }
+
+    @Test
+    @DisplayName("Запись начинается до конца интервала при достижении порога изменений")
+    void flushShouldStartWhenDirtyThresholdReached() throws InterruptedException {
+        JsonUserRepository delegate = new JsonUserRepository(dataFile);
+        User user = new User("ivan", "pass");
+        delegate.save(user);
+        delegate.flush();
+
+        BackgroundFlushUserRepository repository =
+                new BackgroundFlushUserRepository(delegate, 3_600_000, 3);
+        repository.start();
+        for (int i = 0; i < 3; i++) {
+            user.getWallet().addTransaction(income("100"));
+        }
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (delegate.getPendingChangeCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertEquals(0, delegate.getPendingChangeCount());
+        assertEquals(1, repository.getFlushCount());
+        assertEquals(0, repository.getLagMillis());
+        repository.close();
+    }
+
+    @Test
+    @DisplayName("close() синхронно записывает оставшиеся изменения")
+    void closeShouldWriteRemainingChanges() {
+        JsonUserRepository delegate = new JsonUserRepository(dataFile);
+        BackgroundFlushUserRepository repository =
+                new BackgroundFlushUserRepository(delegate, 3_600_000, 1000);
+        repository.start();
+
+        User user = new User("ivan", "pass");
+        repository.save(user);
+        user.getWallet().addTransaction(income("500"));
+        assertTrue(repository.getPendingChangeCount() > 0);
+
+        repository.close();
+
+        JsonUserRepository restored = new JsonUserRepository(dataFile);
+        restored.load();
+        assertEquals(
+                new BigDecimal("500"),
+                restored.findByLogin("ivan").orElseThrow().getWallet().getBalance());
+        assertEquals(0, repository.getLagMillis());
+        assertTrue(repository.getLastFlushDurationMillis() >= 0);
+    }
+
+    @Test
+    @DisplayName("Ошибка записи на диск учитывается как неудачная запись")
+    void diskErrorShouldCountAsFailedFlush() throws Exception {
+        // Каталог данных занят обычным файлом — записать снимок невозможно
+        Path blocker = Files.createFile(tempDir.resolve("blocker"));
+        JsonUserRepository delegate =
+                new JsonUserRepository(blocker.resolve("users.json").toString());
+        BackgroundFlushUserRepository repository =
+                new BackgroundFlushUserRepository(delegate, 3_600_000, 1000);
+        repository.start();
+        repository.save(new User("ivan", "pass"));
+
+        repository.flush();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (repository.getFailedFlushCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(0, repository.getFlushCount());
+        assertEquals(1, repository.getFailedFlushCount());
+        assertTrue(delegate.hasChanges());
+        assertThrows(IOException.class, repository::flushOrThrow);
+        assertEquals(2, repository.getFailedFlushCount());
+        ExecutionException error =
+                assertThrows(
+                        ExecutionException.class,
+                        () -> repository.flushAsync().get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, error.getCause());
+        repository.close();
+    }
+
+    private Transaction income(String amount) {
+        return new Transaction(TransactionType.INCOME, new BigDecimal(amount), "Зарплата", "");
+    }
+}
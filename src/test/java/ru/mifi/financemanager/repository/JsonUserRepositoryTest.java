@@ -0,0 +1,150 @@
+package ru.mifi.financemanager.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionType;
+import ru.mifi.financemanager.domain.User;
+
+/** Тесты JSON-репозитория: сохранение и потоковая загрузка. */
+@DisplayName("JsonUserRepository — тесты сохранения и загрузки")
+class JsonUserRepositoryTest {
+
+    @TempDir Path tempDir;
+
+    private Path dataFile;
+
+    @BeforeEach
+    void setUp() {
+        dataFile = tempDir.resolve("users.json");
+    }
+
+    @Test
+    @DisplayName("Несколько пользователей сохраняются и загружаются с кошельками")
+    void usersShouldSurviveFlushAndLoad() {
+        JsonUserRepository repository = new JsonUserRepository(dataFile.toString());
+        for (int i = 0; i < 5; i++) {
+            User user = new User("user" + i, "pass");
+            user.getWallet()
+                    .addTransaction(
+                            new Transaction(
+                                    TransactionType.INCOME,
+                                    new BigDecimal(1000 * (i + 1)),
+                                    "Зарплата",
+                                    ""));
+            repository.save(user);
+        }
+        repository.flush();
+
+        JsonUserRepository restored = new JsonUserRepository(dataFile.toString());
+        restored.load();
+
+        assertEquals(5, restored.count());
+        assertEquals(
+                new BigDecimal("3000"),
+                restored.findByLogin("USER2").orElseThrow().getWallet().getBalance());
+    }
+
+    @Test
+    @DisplayName("Пустой файл данных загружается без ошибок")
+    void emptyFileShouldLoadNothing() throws IOException {
+        Files.createFile(dataFile);
+
+        JsonUserRepository repository = new JsonUserRepository(dataFile.toString());
+        repository.load();
+
+        assertEquals(0, repository.count());
+    }
+
+    @Test
+    @DisplayName("Сессия без изменений не перезаписывает файл")
+    void flushWithoutChangesShouldNotTouchFile() throws IOException {
+        JsonUserRepository repository = new JsonUserRepository(dataFile.toString());
+        repository.save(new User("ivan", "pass"));
+        repository.flush();
+
+        JsonUserRepository restored = new JsonUserRepository(dataFile.toString());
+        restored.load();
+        FileTime marker = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(dataFile, marker);
+
+        User user = restored.findByLogin("ivan").orElseThrow();
+        restored.save(user);
+        restored.flush();
+        assertEquals(marker, Files.getLastModifiedTime(dataFile));
+
+        user.getWallet().setBudget("Еда", new BigDecimal("1000"));
+        restored.flush();
+        assertNotEquals(marker, Files.getLastModifiedTime(dataFile));
+    }
+
+    @Test
+    @DisplayName("Снимок не записывается посреди перевода")
+    void snapshotShouldWaitForAtomicUnit() throws Exception {
+        JsonUserRepository repository = new JsonUserRepository(dataFile.toString());
+        User sender = new User("sender", "pass");
+        User receiver = new User("receiver", "pass");
+        repository.save(sender);
+        repository.save(receiver);
+        repository.flush();
+
+        CountDownLatch halfDone = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread transfer =
+                new Thread(
+                        () ->
+                                repository.runAtomically(
+                                        () -> {
+                                            sender.getWallet()
+                                                    .addTransaction(
+                                                            transfer(TransactionType.EXPENSE));
+                                            halfDone.countDown();
+                                            awaitQuietly(release);
+                                            receiver.getWallet()
+                                                    .addTransaction(
+                                                            transfer(TransactionType.INCOME));
+                                        }));
+        transfer.start();
+        halfDone.await();
+
+        Thread flusher = new Thread(repository::flush);
+        flusher.start();
+        flusher.join(200);
+        assertTrue(flusher.isAlive());
+
+        release.countDown();
+        transfer.join();
+        flusher.join();
+
+        JsonUserRepository restored = new JsonUserRepository(dataFile.toString());
+        restored.load();
+        assertEquals(
+                new BigDecimal("-100"),
+                restored.findByLogin("sender").orElseThrow().getWallet().getBalance());
+        assertEquals(
+                new BigDecimal("100"),
+                restored.findByLogin("receiver").orElseThrow().getWallet().getBalance());
+    }
+
+    private static Transaction transfer(TransactionType type) {
+        return new Transaction(type, new BigDecimal("100"), "Перевод", "");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ru.mifi.financemanager.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionType;
+import ru.mifi.financemanager.domain.User;
+
+/**
+ * Тесты репозитория с ленивой загрузкой.
+ *
+ * <p>Проверяем, что при старте загружается только индекс, пользователи подгружаются по запросу, а
+ * незагруженные записи переживают перезапись снимка без изменений.
+ */
+@DisplayName("LazyJsonUserRepository — тесты ленивой загрузки")
+class LazyJsonUserRepositoryTest {
+
+    @TempDir Path tempDir;
+
+    private String dataFile;
+
+    @BeforeEach
+    void setUp() {
+        dataFile = tempDir.resolve("users.json").toString();
+
+        LazyJsonUserRepository repository = new LazyJsonUserRepository(dataFile);
+        for (int i = 0; i < 3; i++) {
+            User user = new User("user" + i, "pass");
+            user.getWallet().addTransaction(income(String.valueOf(1000 * (i + 1))));
+            repository.save(user);
+        }
+        repository.flush();
+    }
+
+    @Test
+    @DisplayName("При старте загружается только индекс")
+    void loadShouldReadOnlyIndex() {
+        LazyJsonUserRepository repository = new LazyJsonUserRepository(dataFile);
+        repository.load();
+
+        assertEquals(0, repository.getLoadedCount());
+        assertEquals(3, repository.findAllLogins().size());
+        assertTrue(repository.existsByLogin("USER1"));
+
+        User user = repository.findByLogin("user1").orElseThrow();
+
+        assertEquals(new BigDecimal("2000"), user.getWallet().getBalance());
+        assertEquals(1, repository.getLoadedCount());
+    }
+
+    @Test
+    @DisplayName("Изменения сохраняются, незагруженные пользователи не теряются")
+    void flushShouldKeepUnloadedUsers() {
+        LazyJsonUserRepository repository = new LazyJsonUserRepository(dataFile);
+        repository.load();
+        repository.findByLogin("user2").orElseThrow().getWallet().addTransaction(income("500"));
+        repository.flush();
+        repository.evict("user2");
+
+        assertEquals(0, repository.getLoadedCount());
+
+        // Файл остаётся обычным JSON-снимком
+        JsonUserRepository plain = new JsonUserRepository(dataFile);
+        plain.load();
+        assertEquals(3, plain.count());
+        assertEquals(
+                new BigDecimal("3500"),
+                plain.findByLogin("user2").orElseThrow().getWallet().getBalance());
+        assertEquals(
+                new BigDecimal("1000"),
+                plain.findByLogin("user0").orElseThrow().getWallet().getBalance());
+    }
+
+    @Test
+    @DisplayName("Без индекса выполняется полная загрузка")
+    void missingIndexShouldFallBackToFullLoad() throws IOException {
+        Files.delete(Path.of(dataFile + ".idx"));
+
+        LazyJsonUserRepository repository = new LazyJsonUserRepository(dataFile);
+        repository.load();
+
+        assertEquals(3, repository.getLoadedCount());
+        assertEquals(
+                new BigDecimal("3000"),
+                repository.findByLogin("user2").orElseThrow().getWallet().getBalance());
+
+        repository.flush();
+        assertTrue(Files.exists(Path.of(dataFile + ".idx")));
+    }
+
+    @Test
+    @DisplayName("Закреплённый пользователь не выгружается, его изменения сохраняются")
+    void pinnedUserShouldNotBeEvicted() {
+        LazyJsonUserRepository repository = new LazyJsonUserRepository(dataFile);
+        repository.load();
+        User recipient = repository.acquire("user1").orElseThrow();
+
+        // Получатель вышел из системы, пока перевод держит его экземпляр
+        repository.evict("user1");
+        assertEquals(1, repository.getLoadedCount());
+        recipient.getWallet().addTransaction(income("300"));
+        repository.release("user1");
+
+        // Выгрузка ждёт записи изменений
+        assertEquals(1, repository.getLoadedCount());
+        repository.flush();
+        assertEquals(0, repository.getLoadedCount());
+
+        LazyJsonUserRepository restored = new LazyJsonUserRepository(dataFile);
+        restored.load();
+        assertEquals(
+                new BigDecimal("2300"),
+                restored.findByLogin("user1").orElseThrow().getWallet().getBalance());
+    }
+
+    private Transaction income(String amount) {
+        return new Transaction(TransactionType.INCOME, new BigDecimal(amount), "Зарплата", "");
+    }
+}
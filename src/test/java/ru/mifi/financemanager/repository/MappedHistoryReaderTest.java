@@ -0,0 +1,93 @@
+package ru.mifi.financemanager.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionType;
+import ru.mifi.financemanager.domain.User;
+import ru.mifi.financemanager.domain.Wallet;
+
+/** Тесты чтения истории из отображённого файла транзакций. */
+@DisplayName("MappedHistoryReader — тесты чтения из отображённого файла")
+class MappedHistoryReaderTest {
+
+    @TempDir Path tempDir;
+
+    @Test
+    @DisplayName("Выборка за период читается из файла без сборки пользователя")
+    void periodQueryShouldReadRecordsDirectly() throws IOException {
+        User user = new User("ivan", "pass");
+        // Транзакции добавлены не по порядку времени
+        for (int day : new int[] {15, 3, 28, 10, 3, 20}) {
+            user.getWallet().addTransaction(expense(day, "100." + day));
+        }
+        Path file = tempDir.resolve("users.mmt");
+        MappedTransactionFile.write(file, List.of(user, new User("petr", "pass")));
+
+        MappedHistoryReader reader = new MappedHistoryReader(file.toString());
+        reader.load();
+
+        MappedTransactionFile.History history = reader.getHistory("IVAN").orElseThrow();
+        List<Transaction> period =
+                history.getTransactionsByPeriod(
+                        LocalDateTime.of(2025, 1, 3, 12, 0), LocalDateTime.of(2025, 1, 15, 12, 0));
+
+        assertEquals(
+                List.of(3, 3, 10, 15),
+                period.stream().map(t -> t.getCreatedAt().getDayOfMonth()).toList());
+        assertEquals(new BigDecimal("100.10"), period.get(2).getAmount());
+        assertEquals(6, history.size());
+        assertEquals(0, reader.getMaterializedCount());
+        assertEquals(List.of("ivan", "petr"), reader.findAllLogins());
+    }
+
+    @Test
+    @DisplayName("Пользователь собирается из файла с исходным порядком и бюджетами")
+    void findByLoginShouldRestoreWallet() throws IOException {
+        User user = new User("ivan", "pass");
+        user.getWallet().setBudget("Еда", new BigDecimal("5000"));
+        user.getWallet().addTransaction(expense(20, "300"));
+        user.getWallet().addTransaction(expense(5, "200"));
+        user.getWallet()
+                .addTransaction(
+                        new Transaction(
+                                TransactionType.INCOME,
+                                new BigDecimal("98765432109876543210.5"),
+                                "Наследство",
+                                "очень длинное описание"));
+        Path file = tempDir.resolve("users.mmt");
+        MappedTransactionFile.write(file, List.of(user));
+
+        MappedHistoryReader reader = new MappedHistoryReader(file.toString());
+        reader.load();
+        Wallet restored = reader.findByLogin("ivan").orElseThrow().getWallet();
+
+        assertEquals(user.getWallet().getBalance(), restored.getBalance());
+        assertEquals(new BigDecimal("5000"), restored.getBudget("Еда"));
+        assertEquals(
+                user.getWallet().getTransactions().stream().map(Transaction::getId).toList(),
+                restored.getTransactions().stream().map(Transaction::getId).toList());
+        assertEquals(1, reader.getMaterializedCount());
+        reader.evict("IVAN");
+        assertEquals(0, reader.getMaterializedCount());
+        reader.close();
+    }
+
+    private Transaction expense(int day, String amount) {
+        return new Transaction(
+                "d" + day + "-" + amount,
+                TransactionType.EXPENSE,
+                new BigDecimal(amount),
+                "Еда",
+                "",
+                LocalDateTime.of(2025, 1, day, 12, 0));
+    }
+}
@@ -0,0 +1,68 @@
+package ru.mifi.financemanager.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionType;
+import ru.mifi.financemanager.domain.User;
+import ru.mifi.financemanager.exception.ValidationException;
+import ru.mifi.financemanager.service.AuthService;
+import ru.mifi.financemanager.service.AuthServiceImpl;
+import ru.mifi.financemanager.service.FinanceService;
+import ru.mifi.financemanager.service.FinanceServiceImpl;
+import ru.mifi.financemanager.service.NotificationService;
+
+/** Тесты режима хранения mapped — просмотра архива только для чтения. */
+@DisplayName("MappedUserRepository — тесты хранилища только для чтения")
+class MappedUserRepositoryTest {
+
+    @TempDir Path tempDir;
+
+    @Test
+    @DisplayName("Архив открывается для просмотра, а изменения отклоняются")
+    void archiveShouldBeReadableButNotWritable() throws IOException {
+        User ivan = new User("ivan", "pass");
+        ivan.getWallet()
+                .addTransaction(
+                        new Transaction(
+                                TransactionType.INCOME, new BigDecimal("1000"), "Зарплата", ""));
+        Path file = tempDir.resolve("users.mapped");
+        MappedTransactionFile.write(file, List.of(ivan, new User("petr", "pass")));
+        byte[] before = Files.readAllBytes(file);
+
+        MappedUserRepository repository = new MappedUserRepository(file.toString());
+        repository.load();
+        AuthService authService = new AuthServiceImpl(repository);
+        FinanceService financeService =
+                new FinanceServiceImpl(authService, new NotificationService(false), repository);
+
+        authService.login("ivan", "pass");
+        assertEquals(0, new BigDecimal("1000").compareTo(financeService.getBalance()));
+
+        assertThrows(
+                ValidationException.class,
+                () -> financeService.addIncome(new BigDecimal("10"), "Подарок", ""));
+        assertThrows(
+                ValidationException.class,
+                () -> financeService.setBudget("Еда", new BigDecimal("100")));
+        User petr = authService.findUserByLogin("petr").orElseThrow();
+        assertThrows(
+                ValidationException.class,
+                () -> financeService.transfer(petr, new BigDecimal("10"), ""));
+        assertThrows(ValidationException.class, () -> authService.register("anna", "pass"));
+
+        authService.logout();
+        assertEquals(0, petr.getWallet().getTransactions().size());
+        assertArrayEquals(before, Files.readAllBytes(file));
+        assertThrows(IllegalStateException.class, () -> repository.save(new User("anna", "p")));
+        repository.close();
+    }
+}
@@ -0,0 +1,289 @@
+package ru.mifi.financemanager.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionType;
+import ru.mifi.financemanager.domain.User;
+
+/** Тесты репозитория с шардированным хранением. */
+@DisplayName("ShardedUserRepository — тесты шардированного хранения")
+class ShardedUserRepositoryTest {
+
+    @TempDir Path tempDir;
+
+    private String dataFile;
+
+    @BeforeEach
+    void setUp() {
+        dataFile = tempDir.resolve("users.json").toString();
+    }
+
+    @Test
+    @DisplayName("Перезаписывается только шард изменённого пользователя")
+    void flushShouldRewriteOnlyDirtyShards() throws IOException {
+        ShardedUserRepository repository = new ShardedUserRepository(dataFile, 8);
+        for (int i = 0; i < 20; i++) {
+            repository.save(new User("user" + i, "pass"));
+        }
+        repository.flush();
+
+        // Помечаем все файлы старым временем, чтобы заметить перезапись
+        FileTime marker = FileTime.fromMillis(0);
+        for (int shard = 0; shard < 8; shard++) {
+            if (Files.exists(repository.shardPath(shard))) {
+                Files.setLastModifiedTime(repository.shardPath(shard), marker);
+            }
+        }
+
+        repository.findByLogin("user7").orElseThrow().getWallet().addTransaction(income("100"));
+        repository.flush();
+
+        int changedShard = repository.shardOf("user7");
+        for (int shard = 0; shard < 8; shard++) {
+            Path path = repository.shardPath(shard);
+            if (Files.exists(path)) {
+                assertEquals(
+                        shard == changedShard,
+                        !Files.getLastModifiedTime(path).equals(marker),
+                        "шард " + shard);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Данные переносятся из единого файла и загружаются из шардов")
+    void shouldMigrateFromSingleFile() {
+        JsonUserRepository single = new JsonUserRepository(dataFile);
+        for (int i = 0; i < 10; i++) {
+            User user = new User("user" + i, "pass");
+            user.getWallet().addTransaction(income(String.valueOf(100 * (i + 1))));
+            single.save(user);
+        }
+        single.flush();
+
+        ShardedUserRepository repository = new ShardedUserRepository(dataFile, 4);
+        repository.load();
+        repository.flush();
+
+        // Меняем число шардов — пользователи перераспределяются при следующем сохранении
+        ShardedUserRepository resharded = new ShardedUserRepository(dataFile, 3);
+        resharded.load();
+        resharded.flush();
+
+        ShardedUserRepository restored = new ShardedUserRepository(dataFile, 3);
+        restored.load();
+
+        assertEquals(10, restored.count());
+        assertFalse(Files.exists(restored.shardPath(3)));
+        assertEquals(
+                new BigDecimal("500"),
+                restored.findByLogin("user4").orElseThrow().getWallet().getBalance());
+    }
+
+    @Test
+    @DisplayName("Пока не записаны все шарды, данные читаются из единого файла")
+    void interruptedMigrationShouldKeepSingleFileAsSource() throws IOException {
+        JsonUserRepository single = new JsonUserRepository(dataFile);
+        for (int i = 0; i < 10; i++) {
+            User user = new User("user" + i, "pass");
+            user.getWallet().addTransaction(income(String.valueOf(100 * (i + 1))));
+            single.save(user);
+        }
+        single.flush();
+
+        // Каталог на месте файла шарда — его запись не удастся
+        ShardedUserRepository repository = new ShardedUserRepository(dataFile, 4);
+        repository.load();
+        Path blocked = repository.shardPath(repository.shardOf("user3"));
+        Files.createDirectories(blocked.resolve("blocker"));
+        repository.findByLogin("user0").orElseThrow().getWallet().addTransaction(income("1"));
+        assertThrows(IOException.class, repository::flushOrThrow);
+
+        Files.delete(blocked.resolve("blocker"));
+        Files.delete(blocked);
+        ShardedUserRepository restarted = new ShardedUserRepository(dataFile, 4);
+        restarted.load();
+        assertEquals(10, restarted.count());
+        assertEquals(
+                new BigDecimal("400"),
+                restarted.findByLogin("user3").orElseThrow().getWallet().getBalance());
+        // user0 в другом шарде: записанный шард новее единого файла
+        assertNotEquals(restarted.shardOf("user3"), restarted.shardOf("user0"));
+        assertEquals(
+                new BigDecimal("101"),
+                restarted.findByLogin("user0").orElseThrow().getWallet().getBalance());
+
+        // После полного переноса единый файл больше не читается
+        restarted.flush();
+        Files.delete(Path.of(dataFile));
+        ShardedUserRepository migrated = new ShardedUserRepository(dataFile, 4);
+        migrated.load();
+        assertEquals(10, migrated.count());
+    }
+
+    @Test
+    @DisplayName("Шарды не записываются посреди перевода между шардами")
+    void shardWriteShouldWaitForAtomicUnit() throws Exception {
+        ShardedUserRepository repository = new ShardedUserRepository(dataFile, 8);
+        for (int i = 0; i < 20; i++) {
+            repository.save(new User("user" + i, "pass"));
+        }
+        repository.flush();
+        User sender = repository.findByLogin("user0").orElseThrow();
+        User receiver =
+                repository.findAll().stream()
+                        .filter(
+                                user ->
+                                        repository.shardOf(user.getLogin())
+                                                != repository.shardOf(sender.getLogin()))
+                        .findFirst()
+                        .orElseThrow();
+
+        CountDownLatch halfDone = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread transfer =
+                new Thread(
+                        () ->
+                                repository.runAtomically(
+                                        () -> {
+                                            sender.getWallet().addTransaction(income("100"));
+                                            halfDone.countDown();
+                                            try {
+                                                release.await();
+                                            } catch (InterruptedException e) {
+                                                Thread.currentThread().interrupt();
+                                            }
+                                            receiver.getWallet().addTransaction(income("100"));
+                                        }));
+        transfer.start();
+        halfDone.await();
+
+        Thread flusher = new Thread(repository::flush);
+        flusher.start();
+        flusher.join(200);
+        assertTrue(flusher.isAlive());
+
+        release.countDown();
+        transfer.join();
+        flusher.join();
+
+        ShardedUserRepository restored = new ShardedUserRepository(dataFile, 8);
+        restored.load();
+        assertEquals(
+                new BigDecimal("100"),
+                restored.findByLogin(sender.getLogin()).orElseThrow().getWallet().getBalance());
+        assertEquals(
+                new BigDecimal("100"),
+                restored.findByLogin(receiver.getLogin()).orElseThrow().getWallet().getBalance());
+    }
+
+    @Test
+    @DisplayName("Ошибка записи одного шарда не сохраняет перевод наполовину")
+    void failedShardWriteShouldNotSaveHalfTransfer() throws IOException {
+        ShardedUserRepository repository = new ShardedUserRepository(dataFile, 4);
+        User sender = new User("user0", "pass");
+        User receiver = new User("user3", "pass");
+        repository.save(sender);
+        repository.save(receiver);
+        repository.flush();
+        assertNotEquals(repository.shardOf("user0"), repository.shardOf("user3"));
+
+        repository.runAtomically(
+                () -> {
+                    sender.getWallet().addTransaction(expense("100"));
+                    receiver.getWallet().addTransaction(income("100"));
+                });
+        // Каталог на месте временного файла шарда получателя — его запись не удастся
+        Path shard = repository.shardPath(repository.shardOf("user3"));
+        Path blocked = shard.resolveSibling(shard.getFileName() + ".pending");
+        Files.createDirectories(blocked.resolve("blocker"));
+        assertThrows(IOException.class, repository::flushOrThrow);
+
+        ShardedUserRepository restored = new ShardedUserRepository(dataFile, 4);
+        restored.load();
+        assertEquals(0, balance(restored, "user0").signum());
+        assertEquals(0, balance(restored, "user3").signum());
+
+        // Следующая запись сохраняет перевод целиком
+        Files.delete(blocked.resolve("blocker"));
+        Files.delete(blocked);
+        repository.flushOrThrow();
+        ShardedUserRepository saved = new ShardedUserRepository(dataFile, 4);
+        saved.load();
+        assertEquals(new BigDecimal("-100"), balance(saved, "user0"));
+        assertEquals(new BigDecimal("100"), balance(saved, "user3"));
+    }
+
+    @Test
+    @DisplayName("Прерванная публикация шардов доводится до конца только после файла фиксации")
+    void interruptedPublishShouldFollowCommitIntent() throws IOException {
+        ShardedUserRepository repository = new ShardedUserRepository(dataFile, 4);
+        repository.save(new User("user0", "pass"));
+        repository.save(new User("user3", "pass"));
+        repository.flush();
+
+        // Новые версии шардов готовим в другом каталоге и кладём как временные файлы: так
+        // выглядит каталог, если процесс упал посреди публикации
+        String otherFile = tempDir.resolve("other").resolve("users.json").toString();
+        ShardedUserRepository other = new ShardedUserRepository(otherFile, 4);
+        for (String login : new String[] {"user0", "user3"}) {
+            User user = new User(login, "pass");
+            user.getWallet().addTransaction(income("50"));
+            other.save(user);
+        }
+        other.flush();
+        StringBuilder intent = new StringBuilder();
+        for (String login : new String[] {"user0", "user3"}) {
+            Path target = repository.shardPath(repository.shardOf(login));
+            Files.copy(
+                    other.shardPath(other.shardOf(login)),
+                    target.resolveSibling(target.getFileName() + ".pending"));
+            intent.append("move ").append(target.getFileName()).append('\n');
+        }
+
+        // Без файла фиксации временные файлы отбрасываются
+        ShardedUserRepository withoutIntent = new ShardedUserRepository(dataFile, 4);
+        withoutIntent.load();
+        assertEquals(0, balance(withoutIntent, "user0").signum());
+        assertEquals(0, balance(withoutIntent, "user3").signum());
+        Path shard = repository.shardPath(repository.shardOf("user0"));
+        assertFalse(Files.exists(shard.resolveSibling(shard.getFileName() + ".pending")));
+
+        // С файлом фиксации публикуются оба шарда
+        for (String login : new String[] {"user0", "user3"}) {
+            Path target = repository.shardPath(repository.shardOf(login));
+            Files.copy(
+                    other.shardPath(other.shardOf(login)),
+                    target.resolveSibling(target.getFileName() + ".pending"));
+        }
+        Files.writeString(shard.resolveSibling("commit.intent"), intent);
+        ShardedUserRepository withIntent = new ShardedUserRepository(dataFile, 4);
+        withIntent.load();
+        assertEquals(new BigDecimal("50"), balance(withIntent, "user0"));
+        assertEquals(new BigDecimal("50"), balance(withIntent, "user3"));
+        assertFalse(Files.exists(shard.resolveSibling("commit.intent")));
+    }
+
+    private BigDecimal balance(ShardedUserRepository repository, String login) {
+        return repository.findByLogin(login).orElseThrow().getWallet().getBalance();
+    }
+
+    private Transaction expense(String amount) {
+        return new Transaction(TransactionType.EXPENSE, new BigDecimal(amount), "Перевод", "");
+    }
+
+    private Transaction income(String amount) {
+        return new Transaction(TransactionType.INCOME, new BigDecimal(amount), "Зарплата", "");
+    }
+}
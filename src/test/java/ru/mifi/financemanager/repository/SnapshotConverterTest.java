@@ -0,0 +1,115 @@
+package ru.mifi.financemanager.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionType;
+import ru.mifi.financemanager.domain.User;
+import ru.mifi.financemanager.domain.Wallet;
+
+/** Тесты двоичного формата снимка и конвертера форматов. */
+@DisplayName("SnapshotConverter — тесты преобразования форматов")
+class SnapshotConverterTest {
+
+    @TempDir Path tempDir;
+
+    @Test
+    @DisplayName("JSON -> двоичный -> JSON сохраняет все данные")
+    void roundTripShouldPreserveData() throws IOException {
+        Path json = tempDir.resolve("users.json");
+        JsonUserRepository repository = new JsonUserRepository(json.toString());
+        for (int i = 0; i < 20; i++) {
+            User user = new User("user" + i, "pass" + i);
+            user.getWallet().setBudget("Еда", new BigDecimal("15000.50"));
+            for (int j = 0; j < 10; j++) {
+                user.getWallet()
+                        .addTransaction(
+                                new Transaction(
+                                        "t" + i + "-" + j,
+                                        j % 2 == 0
+                                                ? TransactionType.INCOME
+                                                : TransactionType.EXPENSE,
+                                        new BigDecimal("1234.56"),
+                                        j % 3 == 0 ? "Еда" : "Зарплата",
+                                        j == 0 ? null : "описание " + j,
+                                        LocalDateTime.of(2025, 1, 1 + j, 10, 30, 15, 123_000_000)));
+            }
+            repository.save(user);
+        }
+        // Сумма, не помещающаяся в long
+        repository
+                .findByLogin("user0")
+                .orElseThrow()
+                .getWallet()
+                .addTransaction(
+                        new Transaction(
+                                TransactionType.INCOME,
+                                new BigDecimal("123456789012345678901234567890.1"),
+                                "Наследство",
+                                ""));
+        repository.flush();
+
+        Path binary = tempDir.resolve("users.bin");
+        Path back = tempDir.resolve("back.json");
+        assertEquals(20, SnapshotConverter.convert(json, binary, SnapshotFormat.BINARY));
+        assertEquals(20, SnapshotConverter.convert(binary, back, SnapshotFormat.JSON));
+
+        assertTrue(Files.size(binary) * 2 < Files.size(json), "двоичный снимок заметно меньше");
+
+        JsonUserRepository fromBinary = new JsonUserRepository(binary.toString());
+        fromBinary.load();
+        JsonUserRepository original = new JsonUserRepository(json.toString());
+        original.load();
+
+        for (User expected : original.findAll()) {
+            Wallet actual = fromBinary.findByLogin(expected.getLogin()).orElseThrow().getWallet();
+            Wallet wallet = expected.getWallet();
+
+            assertEquals(wallet.getBalance(), actual.getBalance());
+            assertEquals(wallet.getCategoryBudgets(), actual.getCategoryBudgets());
+            assertEquals(wallet.getTransactions().size(), actual.getTransactions().size());
+            for (int i = 0; i < wallet.getTransactions().size(); i++) {
+                Transaction left = wallet.getTransactions().get(i);
+                Transaction right = actual.getTransactions().get(i);
+                assertEquals(left.getId(), right.getId());
+                assertEquals(left.getAmount(), right.getAmount());
+                assertEquals(left.getCategory(), right.getCategory());
+                assertEquals(left.getDescription(), right.getDescription());
+                assertEquals(left.getCreatedAt(), right.getCreatedAt());
+            }
+            assertFalse(actual.isDirty(), "загруженный кошелёк не требует сохранения");
+        }
+        assertEquals(Files.readString(json), Files.readString(back));
+    }
+
+    @Test
+    @DisplayName("Повреждённый исходный файл не превращается в пустой снимок")
+    void corruptSourceShouldNotBeConverted() throws IOException {
+        Path json = tempDir.resolve("users.json");
+        JsonUserRepository repository = new JsonUserRepository(json.toString());
+        repository.save(new User("ivan", "pass"));
+        repository.flush();
+        String content = Files.readString(json);
+        Files.writeString(json, content.substring(0, content.length() / 2));
+
+        Path binary = tempDir.resolve("users.bin");
+        assertThrows(
+                IOException.class,
+                () -> SnapshotConverter.convert(json, binary, SnapshotFormat.BINARY));
+        assertFalse(Files.exists(binary));
+
+        Files.writeString(json, "{\"login\": \"ivan\"}");
+        assertThrows(
+                IOException.class,
+                () -> SnapshotConverter.convert(json, binary, SnapshotFormat.BINARY));
+        assertFalse(Files.exists(binary));
+    }
+}
@@ -0,0 +1,57 @@
+package ru.mifi.financemanager.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Тесты атомарной записи снимка. */
+@DisplayName("SnapshotWriter — тесты атомарной записи")
+class SnapshotWriterTest {
+
+    @TempDir Path tempDir;
+
+    @Test
+    @DisplayName("Новый снимок полностью заменяет старый")
+    void writeShouldReplaceTarget() throws IOException {
+        Path target = tempDir.resolve("users.json");
+        Files.writeString(target, "old", StandardCharsets.UTF_8);
+
+        SnapshotWriter.write(target, out -> out.write("new".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("new", Files.readString(target, StandardCharsets.UTF_8));
+        assertEquals(1, countFiles());
+    }
+
+    @Test
+    @DisplayName("Сбой во время записи не портит существующий снимок")
+    void failedWriteShouldKeepPreviousSnapshot() throws IOException {
+        Path target = tempDir.resolve("users.json");
+        Files.writeString(target, "[]", StandardCharsets.UTF_8);
+
+        assertThrows(
+                IOException.class,
+                () ->
+                        SnapshotWriter.write(
+                                target,
+                                out -> {
+                                    out.write("[{\"login\":".getBytes(StandardCharsets.UTF_8));
+                                    throw new IOException("диск переполнен");
+                                }));
+
+        assertEquals("[]", Files.readString(target, StandardCharsets.UTF_8));
+        assertEquals(1, countFiles(), "временный файл должен быть удалён");
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package ru.mifi.financemanager.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionType;
+import ru.mifi.financemanager.domain.User;
+import ru.mifi.financemanager.domain.Wallet;
+
+/**
+ * Тесты репозитория с журналом изменений.
+ *
+ * <p>Проверяем, что изменения восстанавливаются из журнала без полного снимка, что сжатие журнала
+ * не приводит к повторному применению записей и что оборванная запись не ломает загрузку.
+ */
+@DisplayName("WalUserRepository — тесты журнала изменений")
+class WalUserRepositoryTest {
+
+    @TempDir Path tempDir;
+
+    private String dataFile;
+
+    @BeforeEach
+    void setUp() {
+        dataFile = tempDir.resolve("users.json").toString();
+    }
+
+    @Test
+    @DisplayName("Изменения восстанавливаются из журнала без записи снимка")
+    void changesShouldBeReplayedFromLog() {
+        WalUserRepository repository = new WalUserRepository(dataFile, 1000);
+        User user = new User("ivan", "pass");
+        repository.save(user);
+        user.getWallet().addTransaction(income("5000"));
+        user.getWallet().setBudget("Еда", new BigDecimal("3000"));
+        repository.flush();
+
+        assertFalse(Files.exists(Path.of(dataFile)), "снимок не должен записываться");
+
+        WalUserRepository restored = new WalUserRepository(dataFile, 1000);
+        restored.load();
+
+        User loaded = restored.findByLogin("ivan").orElseThrow();
+        assertEquals(new BigDecimal("5000"), loaded.getWallet().getBalance());
+        assertEquals(new BigDecimal("3000"), loaded.getWallet().getBudget("Еда"));
+    }
+
+    @Test
+    @DisplayName("После сжатия записи журнала не применяются повторно")
+    void compactionShouldNotDuplicateRecords() {
+        WalUserRepository repository = new WalUserRepository(dataFile, 3);
+        User user = new User("ivan", "pass");
+        repository.save(user);
+        user.getWallet().addTransaction(income("100"));
+        user.getWallet().addTransaction(income("200"));
+        repository.flush();
+        user.getWallet().addTransaction(income("300"));
+        repository.flush();
+
+        assertTrue(Files.exists(Path.of(dataFile)));
+        assertEquals(1, repository.getWalRecordCount());
+
+        WalUserRepository restored = new WalUserRepository(dataFile, 3);
+        restored.load();
+
+        User loaded = restored.findByLogin("ivan").orElseThrow();
+        assertEquals(3, loaded.getWallet().getTransactions().size());
+        assertEquals(new BigDecimal("600"), loaded.getWallet().getBalance());
+    }
+
+    @Test
+    @DisplayName("Транзакции с одинаковым идентификатором восстанавливаются все")
+    void repeatedTransactionIdsShouldBeReplayed() {
+        WalUserRepository repository = new WalUserRepository(dataFile, 1000);
+        User user = new User("ivan", "pass");
+        repository.save(user);
+        Transaction imported = income("100");
+        user.getWallet().addTransaction(imported);
+        // Повторный импорт того же файла
+        user.getWallet().addTransaction(imported);
+        repository.flush();
+
+        WalUserRepository restored = new WalUserRepository(dataFile, 1000);
+        restored.load();
+
+        assertEquals(
+                new BigDecimal("200"),
+                restored.findByLogin("ivan").orElseThrow().getWallet().getBalance());
+    }
+
+    @Test
+    @DisplayName("Изменения внутри runAtomically пишутся одной строкой журнала")
+    void atomicUnitShouldBeLoggedAsOneRecord() throws IOException {
+        WalUserRepository repository = new WalUserRepository(dataFile, 1000);
+        User sender = new User("ivan", "pass");
+        User receiver = new User("petr", "pass");
+        repository.save(sender);
+        repository.save(receiver);
+        sender.getWallet().addTransaction(income("500"));
+        repository.flush();
+        int linesBefore = Files.readAllLines(Path.of(dataFile + ".wal")).size();
+
+        repository.runAtomically(
+                () ->
+                        Wallet.transfer(
+                                sender.getWallet(),
+                                new Transaction(
+                                        TransactionType.EXPENSE,
+                                        new BigDecimal("200"),
+                                        "Перевод",
+                                        ""),
+                                receiver.getWallet(),
+                                income("200"),
+                                true));
+        repository.flush();
+
+        assertEquals(linesBefore + 1, Files.readAllLines(Path.of(dataFile + ".wal")).size());
+
+        WalUserRepository restored = new WalUserRepository(dataFile, 1000);
+        restored.load();
+        assertEquals(
+                new BigDecimal("300"),
+                restored.findByLogin("ivan").orElseThrow().getWallet().getBalance());
+        assertEquals(
+                new BigDecimal("200"),
+                restored.findByLogin("petr").orElseThrow().getWallet().getBalance());
+    }
+
+    @Test
+    @DisplayName("Сжатие журнала во время перевода не записывает его половину в снимок")
+    void compactionShouldWaitForTransfer() throws Exception {
+        WalUserRepository repository = new WalUserRepository(dataFile, 1000);
+        User sender = new User("ivan", "pass");
+        User receiver = new User("petr", "pass");
+        repository.save(sender);
+        repository.save(receiver);
+        sender.getWallet().addTransaction(income("500"));
+        repository.flush();
+
+        CountDownLatch halfDone = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread transfer =
+                new Thread(
+                        () ->
+                                repository.runAtomically(
+                                        () -> {
+                                            sender.getWallet()
+                                                    .addTransaction(
+                                                            new Transaction(
+                                                                    TransactionType.EXPENSE,
+                                                                    new BigDecimal("200"),
+                                                                    "Перевод",
+                                                                    ""));
+                                            halfDone.countDown();
+                                            try {
+                                                release.await(10, TimeUnit.SECONDS);
+                                            } catch (InterruptedException e) {
+                                                Thread.currentThread().interrupt();
+                                            }
+                                            receiver.getWallet().addTransaction(income("200"));
+                                        }));
+        transfer.start();
+        assertTrue(halfDone.await(10, TimeUnit.SECONDS));
+
+        Thread compactor =
+                new Thread(
+                        () -> {
+                            try {
+                                repository.compact();
+                            } catch (IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                        });
+        compactor.start();
+        compactor.join(200);
+        assertTrue(compactor.isAlive());
+
+        release.countDown();
+        transfer.join(10_000);
+        compactor.join(10_000);
+
+        // Снимок без журнала содержит перевод целиком
+        JsonUserRepository snapshot = new JsonUserRepository(dataFile);
+        snapshot.load();
+        assertEquals(
+                new BigDecimal("300"),
+                snapshot.findByLogin("ivan").orElseThrow().getWallet().getBalance());
+        assertEquals(
+                new BigDecimal("200"),
+                snapshot.findByLogin("petr").orElseThrow().getWallet().getBalance());
+
+        // Запись перевода, перенесённая в новый журнал, не применяется повторно
+        repository.flush();
+        WalUserRepository restored = new WalUserRepository(dataFile, 1000);
+        restored.load();
+        assertEquals(
+                new BigDecimal("300"),
+                restored.findByLogin("ivan").orElseThrow().getWallet().getBalance());
+        assertEquals(
+                new BigDecimal("200"),
+                restored.findByLogin("petr").orElseThrow().getWallet().getBalance());
+    }
+
+    @Test
+    @DisplayName("Оборванная запись в конце журнала отбрасывается")
+    void tornRecordShouldBeIgnored() throws IOException {
+        WalUserRepository repository = new WalUserRepository(dataFile, 1000);
+        User user = new User("ivan", "pass");
+        repository.save(user);
+        user.getWallet().addTransaction(income("700"));
+        repository.flush();
+
+        Files.writeString(
+                Path.of(dataFile + ".wal"),
+                "{\"op\":\"TRANSACTION\",\"login\":\"ivan\",\"transac",
+                StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+
+        WalUserRepository restored = new WalUserRepository(dataFile, 1000);
+        restored.load();
+        restored.findByLogin("ivan").orElseThrow().getWallet().addTransaction(income("300"));
+        restored.flush();
+
+        WalUserRepository reloaded = new WalUserRepository(dataFile, 1000);
+        reloaded.load();
+        assertEquals(
+                new BigDecimal("1000"),
+                reloaded.findByLogin("ivan").orElseThrow().getWallet().getBalance());
+    }
+
+    @Test
+    @DisplayName("Конкурентные фиксации объединяются в общие пакеты записи")
+    void concurrentCommitsShouldBeGrouped() throws Exception {
+        WalUserRepository repository = new WalUserRepository(dataFile, 100_000);
+        int writers = 8;
+        int operations = 50;
+        for (int i = 0; i < writers; i++) {
+            repository.save(new User("user" + i, "pass"));
+        }
+        repository.flushAsync().get(10, TimeUnit.SECONDS);
+
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            User user = repository.findByLogin("user" + i).orElseThrow();
+            results.add(
+                    pool.submit(
+                            () -> {
+                                for (int j = 0; j < operations; j++) {
+                                    user.getWallet().addTransaction(income("1"));
+                                    repository.flushAsync().join();
+                                }
+                                return null;
+                            }));
+        }
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        // Каждый вызов дождался записи, но пакетов меньше, чем вызовов
+        assertEquals(0, repository.getPendingChangeCount());
+        assertTrue(repository.getCommitCount() < writers * operations);
+
+        WalUserRepository restored = new WalUserRepository(dataFile, 100_000);
+        restored.load();
+        for (int i = 0; i < writers; i++) {
+            assertEquals(
+                    new BigDecimal(operations),
+                    restored.findByLogin("user" + i).orElseThrow().getWallet().getBalance());
+        }
+    }
+
+    private Transaction income(String amount) {
+        return new Transaction(TransactionType.INCOME, new BigDecimal(amount), "Зарплата", "");
+    }
+}
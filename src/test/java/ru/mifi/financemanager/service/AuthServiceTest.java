@@ -3,18 +3,28 @@ package ru.mifi.financemanager.service;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionType;
 import ru.mifi.financemanager.domain.User;
 import ru.mifi.financemanager.exception.InvalidCredentialsException;
 import ru.mifi.financemanager.exception.ValidationException;
+import ru.mifi.financemanager.repository.BackgroundFlushUserRepository;
 import ru.mifi.financemanager.repository.JsonUserRepository;
+import ru.mifi.financemanager.repository.LazyJsonUserRepository;
 import ru.mifi.financemanager.repository.UserRepository;
+import ru.mifi.financemanager.repository.WalUserRepository;
 
 /**
  * Тесты для сервиса аутентификации.
@@ -180,5 +190,178 @@ class AuthServiceTest {
             assertFalse(authService.isAuthenticated());
             assertTrue(authService.getCurrentUser().isEmpty());
         }
+
+        @Test
+        @DisplayName("Несколько сессий работают независимо, закрытый токен недействителен")
+        void sessionsShouldBeIndependent() {
+            authService.register("alice", "pass");
+            authService.register("bob", "pass");
+
+            Session alice = authService.openSession("alice", "pass");
+            Session bob = authService.openSession("bob", "pass");
+            Session aliceAgain = authService.openSession("alice", "pass");
+
+            assertNotEquals(alice.getToken(), aliceAgain.getToken());
+            assertEquals("bob", authService.findSession(bob.getToken()).get().getLogin());
+            assertFalse(authService.isAuthenticated());
+
+            authService.closeSession(alice.getToken());
+
+            assertTrue(authService.findSession(alice.getToken()).isEmpty());
+            assertTrue(authService.findSession(aliceAgain.getToken()).isPresent());
+            assertTrue(authService.findSession(bob.getToken()).isPresent());
+        }
+
+        @Test
+        @DisplayName("Вход во время закрытия последней сессии получает подключённого пользователя")
+        void openDuringLastCloseShouldGetAttachedUser(@TempDir Path tempDir) throws Exception {
+            CountDownLatch evicting = new CountDownLatch(1);
+            CountDownLatch opened = new CountDownLatch(1);
+            LazyJsonUserRepository repository =
+                    new LazyJsonUserRepository(tempDir.resolve("users.json").toString()) {
+                        @Override
+                        public void evict(String login) {
+                            // Даём второму входу шанс вклиниться в выгрузку
+                            evicting.countDown();
+                            try {
+                                opened.await(200, TimeUnit.MILLISECONDS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            super.evict(login);
+                        }
+                    };
+            repository.load();
+            AuthService service = new AuthServiceImpl(repository);
+            service.register("user", "pass");
+            repository.flush();
+
+            Session first = service.openSession("user", "pass");
+            Thread closer = new Thread(() -> service.closeSession(first.getToken()));
+            closer.start();
+            assertTrue(evicting.await(10, TimeUnit.SECONDS));
+            Session second = service.openSession("user", "pass");
+            opened.countDown();
+            closer.join(10_000);
+
+            // Пользователь новой сессии — тот, чьи изменения репозиторий видит и сохраняет
+            assertSame(repository.findByLogin("user").orElseThrow(), second.getUser());
+            assertTrue(service.findSession(second.getToken()).isPresent());
+        }
+
+        @Test
+        @DisplayName("Медленный вход не задерживает закрытие сессии того же пользователя")
+        void slowLoginShouldNotBlockClose(@TempDir Path tempDir) throws Exception {
+            CountDownLatch loading = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            boolean[] slow = new boolean[1];
+            LazyJsonUserRepository repository =
+                    new LazyJsonUserRepository(tempDir.resolve("users.json").toString()) {
+                        @Override
+                        public Optional<User> acquire(String login) {
+                            // Медленная загрузка кошелька при втором входе
+                            if (slow[0]) {
+                                loading.countDown();
+                                try {
+                                    release.await(10, TimeUnit.SECONDS);
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                            }
+                            return super.acquire(login);
+                        }
+                    };
+            repository.load();
+            AuthService service = new AuthServiceImpl(repository);
+            service.register("user", "pass");
+            Session first = service.openSession("user", "pass");
+
+            slow[0] = true;
+            Thread opener = new Thread(() -> service.openSession("user", "pass"));
+            opener.start();
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            Thread closer = new Thread(() -> service.closeSession(first.getToken()));
+            closer.start();
+            closer.join(5_000);
+
+            assertFalse(closer.isAlive());
+            release.countDown();
+            opener.join(10_000);
+            assertFalse(opener.isAlive());
+        }
+
+        @Test
+        @DisplayName("Закрытие сессии дожидается групповой фиксации журнала при фоновой записи")
+        void closeSessionShouldWaitForGroupCommit(@TempDir Path tempDir) {
+            WalUserRepository wal =
+                    new WalUserRepository(tempDir.resolve("users.json").toString(), 1000);
+            wal.load();
+            BackgroundFlushUserRepository background =
+                    new BackgroundFlushUserRepository(wal, 3_600_000, 1_000_000);
+            background.start();
+            AuthService service = new AuthServiceImpl(background);
+            service.register("user", "pass");
+            service.login("user", "pass")
+                    .getWallet()
+                    .addTransaction(
+                            new Transaction(
+                                    TransactionType.INCOME, new BigDecimal("100"), "Зарплата", ""));
+
+            service.logout();
+
+            // Фоновый интервал не наступал: записал фиксатор журнала по запросу выхода
+            assertEquals(0, wal.getPendingChangeCount());
+            assertTrue(wal.getCommitCount() > 0);
+            assertEquals(0, background.getFlushCount());
+            background.close();
+        }
+
+        @Test
+        @DisplayName("Закрытие сессии не ждёт полной записи снимка при фоновой записи")
+        void closeSessionShouldNotWaitForSnapshot(@TempDir Path tempDir) throws Exception {
+            CountDownLatch writing = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            String dataFile = tempDir.resolve("users.json").toString();
+            JsonUserRepository slow =
+                    new JsonUserRepository(dataFile) {
+                        @Override
+                        public void flushOrThrow() throws IOException {
+                            // Медленный диск: запись снимка стоит, пока тест её не отпустит
+                            writing.countDown();
+                            try {
+                                release.await(10, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            super.flushOrThrow();
+                        }
+                    };
+            BackgroundFlushUserRepository background =
+                    new BackgroundFlushUserRepository(slow, 3_600_000, 1_000_000);
+            background.start();
+            AuthService service = new AuthServiceImpl(background);
+            service.register("user", "pass");
+            service.login("user", "pass")
+                    .getWallet()
+                    .addTransaction(
+                            new Transaction(
+                                    TransactionType.INCOME, new BigDecimal("100"), "Зарплата", ""));
+
+            Thread closer = new Thread(service::logout);
+            closer.start();
+            closer.join(5_000);
+
+            // Выход вернул управление, а снимок пишет фоновый поток
+            assertFalse(closer.isAlive());
+            assertTrue(writing.await(10, TimeUnit.SECONDS));
+            release.countDown();
+            background.close();
+
+            JsonUserRepository restored = new JsonUserRepository(dataFile);
+            restored.load();
+            assertEquals(
+                    new BigDecimal("100"),
+                    restored.findByLogin("user").orElseThrow().getWallet().getBalance());
+        }
     }
 }
@@ -6,11 +6,22 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import ru.mifi.financemanager.domain.Transaction;
+import ru.mifi.financemanager.domain.TransactionSummary;
+import ru.mifi.financemanager.domain.TransactionType;
+import ru.mifi.financemanager.domain.User;
 import ru.mifi.financemanager.exception.ValidationException;
 import ru.mifi.financemanager.repository.JsonUserRepository;
+import ru.mifi.financemanager.repository.LazyJsonUserRepository;
 import ru.mifi.financemanager.repository.UserRepository;
 
 /**
@@ -200,6 +211,22 @@ class FinanceServiceTest {
             assertEquals(new BigDecimal("5000"), expenses.get("Еда"));
             assertEquals(new BigDecimal("3000"), expenses.get("Транспорт"));
         }
+
+        @Test
+        @DisplayName("Снимок статистики содержит доходы и расходы по категориям")
+        void getStatisticsShouldGroupByCategory() {
+            financeService.addExpense(new BigDecimal("1000"), "еда", "");
+
+            TransactionSummary statistics = financeService.getStatistics();
+
+            assertEquals(new BigDecimal("60000"), statistics.getTotalIncome());
+            assertEquals(new BigDecimal("9000"), statistics.getTotalExpense());
+            assertEquals(5, statistics.getTransactionCount());
+            assertEquals(4, statistics.getCategories().size());
+            assertEquals(new BigDecimal("6000"), statistics.getCategory("ЕДА").getExpense());
+            assertEquals(2, statistics.getCategory("Еда").getTransactionCount());
+            assertNull(statistics.getCategory("Развлечения"));
+        }
     }
 
     @Test
@@ -213,4 +240,163 @@ class FinanceServiceTest {
                     financeService.addIncome(new BigDecimal("100"), "Тест", "");
                 });
     }
+
+    @Test
+    @DisplayName("Сервис сессии работает с кошельком пользователя сессии")
+    void forSessionShouldUseSessionUser() {
+        authService.register("other", "pass");
+        Session session = authService.openSession("other", "pass");
+        FinanceService otherService = financeService.forSession(session.getToken());
+
+        otherService.addIncome(new BigDecimal("700"), "Зарплата", "");
+
+        assertEquals(new BigDecimal("700"), otherService.getBalance());
+        assertEquals(BigDecimal.ZERO, financeService.getBalance());
+
+        authService.closeSession(session.getToken());
+        assertThrows(ValidationException.class, otherService::getBalance);
+    }
+
+    @Test
+    @DisplayName("Пакет транзакций проверяется целиком и добавляется одним шагом")
+    void addTransactionsShouldValidateWholeBatch() {
+        Transaction salary =
+                new Transaction(TransactionType.INCOME, new BigDecimal("1000"), "Зарплата", "");
+        Transaction food =
+                new Transaction(TransactionType.EXPENSE, new BigDecimal("300"), "Еда", "");
+        Transaction invalid =
+                new Transaction(TransactionType.EXPENSE, new BigDecimal("-5"), "Еда", "");
+
+        ValidationException error =
+                assertThrows(
+                        ValidationException.class,
+                        () -> financeService.addTransactions(List.of(salary, food, invalid)));
+        assertTrue(error.getMessage().startsWith("Транзакция 3"));
+        assertTrue(financeService.getAllTransactions().isEmpty());
+
+        assertEquals(2, financeService.addTransactions(List.of(salary, food)));
+        assertEquals(new BigDecimal("700"), financeService.getBalance());
+        assertEquals(new BigDecimal("300"), financeService.getExpensesByCategory().get("Еда"));
+    }
+
+    @Test
+    @DisplayName("Пакет переводов выполняется целиком или не выполняется вовсе")
+    void transferBatchShouldBeAllOrNothing() {
+        authService.register("alice", "pass");
+        authService.register("bob", "pass");
+        User alice = authService.findUserByLogin("alice").orElseThrow();
+        User bob = authService.findUserByLogin("bob").orElseThrow();
+        financeService.addIncome(new BigDecimal("1000"), "Зарплата", "");
+
+        List<TransferRequest> tooMuch =
+                List.of(
+                        new TransferRequest(alice, new BigDecimal("600")),
+                        new TransferRequest(bob, new BigDecimal("600")));
+        assertThrows(
+                ValidationException.class, () -> financeService.transferBatch(tooMuch, "Зарплата"));
+        assertEquals(new BigDecimal("1000"), financeService.getBalance());
+        assertEquals(BigDecimal.ZERO, alice.getWallet().getBalance());
+
+        BigDecimal total =
+                financeService.transferBatch(
+                        List.of(
+                                new TransferRequest(alice, new BigDecimal("300")),
+                                new TransferRequest(bob, new BigDecimal("200"))),
+                        "Зарплата");
+
+        assertEquals(new BigDecimal("500"), total);
+        assertEquals(new BigDecimal("500"), financeService.getBalance());
+        assertEquals(new BigDecimal("300"), alice.getWallet().getBalance());
+        assertEquals(new BigDecimal("200"), bob.getWallet().getBalance());
+    }
+
+    @Test
+    @DisplayName("Пустой элемент пакета переводов отклоняется до списания")
+    void transferBatchShouldRejectNullElement() {
+        authService.register("alice", "pass");
+        User alice = authService.findUserByLogin("alice").orElseThrow();
+        financeService.addIncome(new BigDecimal("1000"), "Зарплата", "");
+
+        List<TransferRequest> transfers = new ArrayList<>();
+        transfers.add(new TransferRequest(alice, new BigDecimal("100")));
+        transfers.add(null);
+        ValidationException error =
+                assertThrows(
+                        ValidationException.class,
+                        () -> financeService.transferBatch(transfers, "Зарплата"));
+
+        assertTrue(error.getMessage().startsWith("Перевод 2: "));
+        assertEquals(new BigDecimal("1000"), financeService.getBalance());
+        assertEquals(BigDecimal.ZERO, alice.getWallet().getBalance());
+    }
+
+    @Test
+    @DisplayName("Встречные параллельные переводы не блокируются и не уводят баланс в минус")
+    void concurrentTransfersShouldNotDeadlockOrOverdraw() throws Exception {
+        authService.register("alice", "pass");
+        authService.register("bob", "pass");
+        User alice = authService.findUserByLogin("alice").orElseThrow();
+        User bob = authService.findUserByLogin("bob").orElseThrow();
+        FinanceService aliceService =
+                financeService.forSession(authService.openSession("alice", "pass").getToken());
+        FinanceService bobService =
+                financeService.forSession(authService.openSession("bob", "pass").getToken());
+        aliceService.addIncome(new BigDecimal("100"), "Зарплата", "");
+        bobService.addIncome(new BigDecimal("100"), "Зарплата", "");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            FinanceService service = t % 2 == 0 ? aliceService : bobService;
+            User receiver = t % 2 == 0 ? bob : alice;
+            futures.add(
+                    executor.submit(
+                            () -> {
+                                for (int i = 0; i < 500; i++) {
+                                    try {
+                                        service.transfer(receiver, new BigDecimal("7"), "");
+                                    } catch (ValidationException e) {
+                                        // Недостаточно средств — допустимый исход
+                                    }
+                                }
+                            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        BigDecimal aliceBalance = alice.getWallet().getBalance();
+        BigDecimal bobBalance = bob.getWallet().getBalance();
+        assertTrue(aliceBalance.signum() >= 0);
+        assertTrue(bobBalance.signum() >= 0);
+        assertEquals(new BigDecimal("200"), aliceBalance.add(bobBalance));
+    }
+
+    @Test
+    @DisplayName("Перевод вышедшему пользователю сохраняется при ленивой загрузке")
+    void transferToEvictedRecipientShouldBeSaved(@TempDir Path tempDir) {
+        String dataFile = tempDir.resolve("users.json").toString();
+        LazyJsonUserRepository repository = new LazyJsonUserRepository(dataFile);
+        AuthService lazyAuth = new AuthServiceImpl(repository);
+        FinanceService lazyFinance =
+                new FinanceServiceImpl(lazyAuth, notificationService, repository);
+        lazyAuth.register("alice", "pass");
+        lazyAuth.register("bob", "pass");
+        repository.flush();
+
+        // Экземпляр получателя найден до того, как получатель вышел и был выгружен
+        User staleBob = lazyAuth.findUserByLogin("bob").orElseThrow();
+        lazyAuth.closeSession(lazyAuth.openSession("bob", "pass").getToken());
+        lazyAuth.login("alice", "pass");
+        lazyFinance.addIncome(new BigDecimal("500"), "Зарплата", "");
+        lazyFinance.transfer(staleBob, new BigDecimal("200"), "");
+        lazyAuth.logout();
+
+        LazyJsonUserRepository restored = new LazyJsonUserRepository(dataFile);
+        restored.load();
+        assertEquals(
+                new BigDecimal("200"),
+                restored.findByLogin("bob").orElseThrow().getWallet().getBalance());
+    }
 }